@@ -0,0 +1,399 @@
+package ai;
+
+import java.util.Random;
+
+import models.BitBoard;
+import models.Board;
+import models.RuleSet;
+import utilities.Direction;
+
+/**
+ * MovePolicy that searches the tree of moves and spawned zeroes on a packed
+ * 4x4 board. A move is followed by a chance node that spawns a zero at the
+ * start of a changed line, every line weighted by its amount of changes just
+ * like Board does. Leaves are valued with a heuristic built from lookup
+ * tables of all possible lines.
+ * 
+ * Results are cached in a TranspositionTable. The search deepens one move at
+ * a time until the maximum depth is reached or the time budget runs out, the
+ * best move of the deepest finished search is used.
+ * 
+ * The search plays by the rules of the board it is asked about: its merge
+ * limit, target and spawn value. Boards that can not be packed are handed to
+ * a fallback policy.
+ */
+public class Expectimax implements MovePolicy {
+
+	/**
+	 * Default search depth in moves
+	 */
+	public static final int DEPTH = 4;
+
+	/**
+	 * Default size of the transposition table in entries
+	 */
+	public static final int TABLE_SIZE = 1 << 20;
+
+	// Chance nodes less likely than this are valued by heuristic only
+	private static final double MIN_PROBABILITY = 0.0001;
+
+	// A won board is worth more than any heuristic value
+	private static final float WON = 1e9f;
+
+	// Nodes searched between checks of the clock
+	private static final int CLOCK_INTERVAL = 1024;
+
+	// Heuristic weights, per line
+	private static final float LOST_PENALTY = 200000f;
+	private static final float EMPTY_WEIGHT = 270f;
+	private static final float MERGES_WEIGHT = 700f;
+	private static final float MONOTONICITY_POWER = 4f;
+	private static final float MONOTONICITY_WEIGHT = 47f;
+	private static final float SUM_POWER = 3.5f;
+	private static final float SUM_WEIGHT = 11f;
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	// Heuristic value of every possible line
+	private static final float[] HEURISTIC = new float[1 << 16];
+
+	static {
+		int[] line = new int[BitBoard.LENGTH];
+		for (int packed = 0; packed < HEURISTIC.length; packed++) {
+			for (int i = 0; i < line.length; i++) {
+				// Rank of the value, 0 for an empty cell
+				line[i] = packed >>> 4 * i & 0xF;
+			}
+			HEURISTIC[packed] = heuristic(line);
+		}
+	}
+
+	private final int maxDepth;
+	private final long budget;
+	private final TranspositionTable table;
+	private final MovePolicy fallback;
+
+	// Rules of the running search, the table holds values by these rules
+	private RuleSet rules = RuleSet.DEFAULT;
+
+	// State of the running search
+	private long deadline;
+	private int nodes;
+
+	/**
+	 * Constructor for Expectimax: search to the default depth without a time
+	 * limit
+	 */
+	public Expectimax() {
+		this(DEPTH, 0, new TranspositionTable(TABLE_SIZE), new RandomPolicy());
+	}
+
+	/**
+	 * Constructor for Expectimax
+	 * 
+	 * @param maxDepth
+	 *            Maximum search depth in moves, at least 1
+	 * @param budgetMillis
+	 *            Time per decision in milliseconds, 0 for no limit. The first
+	 *            move of the search is always finished
+	 * @param table
+	 *            Cache of search results, kept between decisions
+	 * @param fallback
+	 *            Policy for boards that can not be packed
+	 */
+	public Expectimax(int maxDepth, long budgetMillis,
+			TranspositionTable table, MovePolicy fallback) {
+		this.maxDepth = Math.max(1, maxDepth);
+		this.budget = budgetMillis * 1000000;
+		this.table = table;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public Direction choose(Board board, int allowed, Random rand) {
+		int[][] cells = board.get();
+		RuleSet rules = board.getRules();
+		if (!BitBoard.isPackable(cells) || !BitBoard.isPackable(rules)) {
+			return fallback.choose(board, allowed, rand);
+		}
+
+		Direction best = best(BitBoard.pack(cells), allowed, rules);
+		return best != null ? best : fallback.choose(board, allowed, rand);
+	}
+
+	/**
+	 * Search the best move for a packed board by the rules of the original
+	 * game
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @param allowed
+	 *            Directions to consider, bit Direction.ordinal() per direction
+	 * @return Best direction or null if no allowed direction changes the board
+	 */
+	public Direction best(long packed, int allowed) {
+		return best(packed, allowed, RuleSet.DEFAULT);
+	}
+
+	/**
+	 * Search the best move for a packed board
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @param allowed
+	 *            Directions to consider, bit Direction.ordinal() per direction
+	 * @param rules
+	 *            Rules packed boards can be played by, see
+	 *            BitBoard.isPackable(RuleSet)
+	 * @return Best direction or null if no allowed direction changes the board
+	 */
+	public Direction best(long packed, int allowed, RuleSet rules) {
+		use(rules);
+		table.nextGeneration();
+		nodes = 0;
+
+		if (budget == 0) {
+			deadline = Long.MAX_VALUE;
+			return search(packed, allowed, maxDepth);
+		}
+
+		deadline = System.nanoTime() + budget;
+		Direction best = null;
+		for (int depth = 1; depth <= maxDepth; depth++) {
+			try {
+				best = search(packed, allowed, depth);
+			} catch (Timeout timeout) {
+				break;
+			}
+			if (System.nanoTime() > deadline) {
+				break;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Value of the best move for a packed board by the rules of the original
+	 * game
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @param depth
+	 *            Search depth in moves
+	 * @return Expected heuristic value, 0 if the game is over
+	 */
+	public float value(long packed, int depth) {
+		return value(packed, depth, RuleSet.DEFAULT);
+	}
+
+	/**
+	 * Value of the best move for a packed board
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @param depth
+	 *            Search depth in moves
+	 * @param rules
+	 *            Rules packed boards can be played by, see
+	 *            BitBoard.isPackable(RuleSet)
+	 * @return Expected heuristic value, 0 if the game is over
+	 */
+	public float value(long packed, int depth, RuleSet rules) {
+		use(rules);
+		table.nextGeneration();
+		nodes = 0;
+		deadline = Long.MAX_VALUE;
+		return max(packed, depth, 1);
+	}
+
+	/**
+	 * @return Cache of search results
+	 */
+	public TranspositionTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Search by other rules than before, values in the table no longer hold
+	 */
+	private void use(RuleSet rules) {
+		if (!BitBoard.isPackable(rules)) {
+			throw new IllegalArgumentException("Packed boards can not be "
+					+ "searched by " + rules);
+		}
+		if (!rules.equals(this.rules)) {
+			table.clear();
+			this.rules = rules;
+		}
+	}
+
+	private Direction search(long packed, int allowed, int depth) {
+		Direction best = null;
+		float bestValue = Float.NEGATIVE_INFINITY;
+		for (Direction direction : DIRECTIONS) {
+			if ((allowed & 1 << direction.ordinal()) == 0) {
+				continue;
+			}
+			long moved = BitBoard.move(packed, direction, rules);
+			if (moved == packed) {
+				continue;
+			}
+
+			// Deeper searches may run out of time, the first one may not
+			float value = chance(packed, moved, direction, depth, 1,
+					depth > 1);
+			if (value > bestValue) {
+				bestValue = value;
+				best = direction;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Value of a board where the player is to move
+	 */
+	private float max(long packed, int depth, double probability) {
+		if (won(packed)) {
+			return WON;
+		}
+		if (depth == 0 || probability < MIN_PROBABILITY) {
+			return evaluate(packed);
+		}
+
+		float cached = table.get(packed, depth);
+		if (!Float.isNaN(cached)) {
+			return cached;
+		}
+
+		float best = 0;
+		for (Direction direction : DIRECTIONS) {
+			long moved = BitBoard.move(packed, direction, rules);
+			if (moved != packed) {
+				best = Math.max(best,
+						chance(packed, moved, direction, depth, probability,
+								true));
+			}
+		}
+
+		table.put(packed, depth, best);
+		return best;
+	}
+
+	/**
+	 * Expected value of a moved board over all lines a zero may spawn in
+	 */
+	private float chance(long packed, long moved, Direction direction,
+			int depth, double probability, boolean timed) {
+		if (timed && ++nodes % CLOCK_INTERVAL == 0
+				&& System.nanoTime() > deadline) {
+			throw Timeout.INSTANCE;
+		}
+
+		int changes = BitBoard.changes(packed, direction, rules);
+		int total = BitBoard.total(changes);
+
+		double sum = 0;
+		for (int line = 0; line < BitBoard.LENGTH; line++) {
+			int weight = changes >>> 8 * line & 0xFF;
+			if (weight > 0) {
+				long spawned = BitBoard.spawn(moved, direction, line,
+						rules.getSpawnValue());
+				sum += weight
+						* max(spawned, depth - 1, probability * weight / total);
+			}
+		}
+		return (float) (sum / total);
+	}
+
+	/**
+	 * Heuristic value of a board, the sum over all rows and columns
+	 */
+	private static float evaluate(long packed) {
+		long transposed = BitBoard.transpose(packed);
+		return HEURISTIC[(int) packed & 0xFFFF]
+				+ HEURISTIC[(int) (packed >>> 16) & 0xFFFF]
+				+ HEURISTIC[(int) (packed >>> 32) & 0xFFFF]
+				+ HEURISTIC[(int) (packed >>> 48) & 0xFFFF]
+				+ HEURISTIC[(int) transposed & 0xFFFF]
+				+ HEURISTIC[(int) (transposed >>> 16) & 0xFFFF]
+				+ HEURISTIC[(int) (transposed >>> 32) & 0xFFFF]
+				+ HEURISTIC[(int) (transposed >>> 48) & 0xFFFF];
+	}
+
+	/**
+	 * Whether a packed board has the target of the rules on it
+	 */
+	private boolean won(long packed) {
+		int target = rules.getTarget();
+		for (int shift = 0; shift < 64; shift += 4) {
+			if ((packed >>> shift & 0xF) > target) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Heuristic value of a single line: reward empty cells, possible merges
+	 * and values ordered towards one side, punish many high values
+	 * 
+	 * @param line
+	 *            Ranks on the line, value + 1 and 0 for an empty cell
+	 */
+	private static float heuristic(int[] line) {
+		float sum = 0;
+		int empty = 0;
+		int merges = 0;
+
+		int previous = 0;
+		int counter = 0;
+		for (int rank : line) {
+			sum += Math.pow(rank, SUM_POWER);
+			if (rank == 0) {
+				empty++;
+			} else {
+				if (previous == rank) {
+					counter++;
+				} else if (counter > 0) {
+					merges += 1 + counter;
+					counter = 0;
+				}
+				previous = rank;
+			}
+		}
+		if (counter > 0) {
+			merges += 1 + counter;
+		}
+
+		float monotonicityLeft = 0;
+		float monotonicityRight = 0;
+		for (int i = 1; i < line.length; i++) {
+			float difference = (float) (Math.pow(line[i - 1],
+					MONOTONICITY_POWER) - Math.pow(line[i], MONOTONICITY_POWER));
+			if (difference > 0) {
+				monotonicityLeft += difference;
+			} else {
+				monotonicityRight -= difference;
+			}
+		}
+
+		return LOST_PENALTY + EMPTY_WEIGHT * empty + MERGES_WEIGHT * merges
+				- MONOTONICITY_WEIGHT
+				* Math.min(monotonicityLeft, monotonicityRight) - SUM_WEIGHT
+				* sum;
+	}
+
+	/**
+	 * Thrown to stop a search that ran out of time
+	 */
+	@SuppressWarnings("serial")
+	private static class Timeout extends RuntimeException {
+
+		static final Timeout INSTANCE = new Timeout();
+
+		private Timeout() {
+			super(null, null, false, false);
+		}
+	}
+}
@@ -0,0 +1,295 @@
+package ai;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import models.BitBoard;
+import models.Board;
+import models.RandomSpawnPolicy;
+import models.RuleSet;
+import utilities.Direction;
+import utilities.SeededRandom;
+
+/**
+ * MovePolicy that plays random games from a copy of the current board for
+ * each direction and picks the direction with the best average final score.
+ * 
+ * Rollouts are split into small tasks on a work-stealing ForkJoinPool, every
+ * rollout draws from its own split of a SplittableRandom, so workers share
+ * nothing and throughput grows with the amount of cores. Packed 4x4 boards
+ * are played out on BitBoard, other boards on a copy of the Board. Rollouts
+ * play by the rules of the board: its merge limit, target and spawn value.
+ */
+public class MonteCarlo implements MovePolicy {
+
+	/**
+	 * Default amount of rollouts per direction
+	 */
+	public static final int ROLLOUTS = 1000;
+
+	// Rollouts played by one task without splitting any further
+	private static final int BATCH = 16;
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	// Moves of the unpacked playouts
+	private static final MovePolicy RANDOM = new RandomPolicy();
+
+	private final ForkJoinPool pool;
+	private final int rollouts;
+	private final long budget;
+	private final int maxMoves;
+
+	/**
+	 * Constructor for MonteCarlo: default amount of rollouts on the common
+	 * pool, without a time limit
+	 */
+	public MonteCarlo() {
+		this(ForkJoinPool.commonPool(), ROLLOUTS, 0, 0);
+	}
+
+	/**
+	 * Constructor for MonteCarlo
+	 * 
+	 * @param pool
+	 *            Pool to run rollouts on, unless called from inside a
+	 *            ForkJoinPool already
+	 * @param rollouts
+	 *            Maximum amount of rollouts per direction
+	 * @param budgetMillis
+	 *            Time per decision in milliseconds, 0 for no limit. Every
+	 *            direction gets at least one rollout
+	 * @param maxMoves
+	 *            Maximum length of a rollout in moves, 0 to play until the game
+	 *            ends
+	 */
+	public MonteCarlo(ForkJoinPool pool, int rollouts, long budgetMillis,
+			int maxMoves) {
+		this.pool = pool;
+		this.rollouts = Math.max(1, rollouts);
+		this.budget = budgetMillis * 1000000;
+		this.maxMoves = maxMoves;
+	}
+
+	@Override
+	public Direction choose(Board board, int allowed, Random rand) {
+		long deadline = budget == 0 ? Long.MAX_VALUE : System.nanoTime()
+				+ budget;
+
+		int[][] cells = board.get();
+		RuleSet rules = board.getRules();
+		boolean packable = BitBoard.isPackable(cells)
+				&& BitBoard.isPackable(rules);
+		long packed = packable ? BitBoard.pack(cells) : 0;
+
+		SplittableRandom random = new SplittableRandom(rand.nextLong());
+
+		// One task per direction, all running at the same time
+		Rollouts[] tasks = new Rollouts[DIRECTIONS.length];
+		for (Direction direction : DIRECTIONS) {
+			if ((allowed & 1 << direction.ordinal()) == 0) {
+				continue;
+			}
+			if (packable
+					&& BitBoard.move(packed, direction, rules) == packed) {
+				continue;
+			}
+			tasks[direction.ordinal()] = new Rollouts(rules, packable ? null
+					: cells, packed, direction, 0, rollouts, deadline,
+					random.split());
+		}
+
+		for (Rollouts task : tasks) {
+			if (task == null) {
+				continue;
+			}
+			if (ForkJoinTask.inForkJoinPool()) {
+				task.fork();
+			} else {
+				pool.execute(task);
+			}
+		}
+
+		Direction best = null;
+		double bestAverage = Double.NEGATIVE_INFINITY;
+		for (Direction direction : DIRECTIONS) {
+			Rollouts task = tasks[direction.ordinal()];
+			if (task == null) {
+				continue;
+			}
+
+			long[] tally = task.join();
+			if (tally[1] > 0 && (double) tally[0] / tally[1] > bestAverage) {
+				bestAverage = (double) tally[0] / tally[1];
+				best = direction;
+			}
+		}
+
+		if (best == null) {
+			// Nothing moves, let the caller find out
+			return DIRECTIONS[Integer.numberOfTrailingZeros(allowed)];
+		}
+		return best;
+	}
+
+	/**
+	 * Play a random game on a packed board until it is won, lost or the move
+	 * limit is reached
+	 * 
+	 * @param packed
+	 *            Packed board to start from
+	 * @param random
+	 *            Random of this rollout
+	 * @param maxMoves
+	 *            Maximum amount of moves, negative for no limit
+	 * @param rules
+	 *            Rules packed boards can be played by, see
+	 *            BitBoard.isPackable(RuleSet)
+	 * @return Final score, highestValue * 10 + secondHighestValue
+	 */
+	static int playout(long packed, SplittableRandom random, int maxMoves,
+			RuleSet rules) {
+		long[] moved = new long[DIRECTIONS.length];
+		for (int moves = 0; maxMoves < 0 || moves < maxMoves; moves++) {
+			if (rules.isWon(BitBoard.score(packed, rules))) {
+				break;
+			}
+
+			// Pick one of the directions that change the board
+			int legal = 0;
+			for (int d = 0; d < DIRECTIONS.length; d++) {
+				moved[d] = BitBoard.move(packed, DIRECTIONS[d], rules);
+				if (moved[d] != packed) {
+					legal++;
+				}
+			}
+			if (legal == 0) {
+				break;
+			}
+
+			int pick = random.nextInt(legal);
+			for (int d = 0; d < DIRECTIONS.length; d++) {
+				if (moved[d] != packed && pick-- == 0) {
+					packed = spawn(packed, moved[d], DIRECTIONS[d], random,
+							rules);
+					break;
+				}
+			}
+		}
+		return BitBoard.score(packed, rules);
+	}
+
+	/**
+	 * Spawn a zero in a random changed line of a moved board
+	 */
+	private static long spawn(long packed, long moved, Direction direction,
+			SplittableRandom random, RuleSet rules) {
+		int changes = BitBoard.changes(packed, direction, rules);
+		int line = BitBoard.line(changes,
+				random.nextInt(BitBoard.total(changes)));
+		return BitBoard.spawn(moved, direction, line, rules.getSpawnValue());
+	}
+
+	/**
+	 * Play a random game on a copy of an unpacked board
+	 * 
+	 * @return Final score, highestValue * 10 + secondHighestValue
+	 */
+	private int playout(RuleSet rules, int[][] cells, Direction first,
+			SplittableRandom random) {
+		Random rand = new SeededRandom(random.nextLong());
+		Board board = new Board(rules, new RandomSpawnPolicy(rand));
+		board.set(cells);
+
+		if (!board.move(first)) {
+			return -1;
+		}
+
+		for (int moves = 1; (maxMoves == 0 || moves < maxMoves)
+				&& !rules.isWon(board.getScore())
+				&& board.getLegalMoves() != 0; moves++) {
+			board.move(RANDOM.choose(board, board.getLegalMoves(), rand));
+		}
+		return board.getScore();
+	}
+
+	/**
+	 * Task playing a range of rollouts for one direction, split in half until
+	 * small enough. Results are the sum of the final scores and the amount of
+	 * rollouts played
+	 */
+	@SuppressWarnings("serial")
+	private class Rollouts extends RecursiveTask<long[]> {
+
+		private final RuleSet rules;
+		private final int[][] cells;
+		private final long packed;
+		private final Direction direction;
+		private final int from;
+		private final int to;
+		private final long deadline;
+		private final SplittableRandom random;
+
+		Rollouts(RuleSet rules, int[][] cells, long packed,
+				Direction direction, int from, int to, long deadline,
+				SplittableRandom random) {
+			this.rules = rules;
+			this.cells = cells;
+			this.packed = packed;
+			this.direction = direction;
+			this.from = from;
+			this.to = to;
+			this.deadline = deadline;
+			this.random = random;
+		}
+
+		@Override
+		protected long[] compute() {
+			if (to - from <= BATCH) {
+				long sum = 0;
+				long count = 0;
+				for (int rollout = from; rollout < to; rollout++) {
+					// The very first rollout is always played
+					if (rollout > 0 && System.nanoTime() > deadline) {
+						break;
+					}
+
+					SplittableRandom own = random.split();
+					int score;
+					if (cells == null) {
+						// First move is the direction itself, no limit (0)
+						// becomes negative
+						long moved = BitBoard.move(packed, direction, rules);
+						score = playout(
+								spawn(packed, moved, direction, own, rules),
+								own, maxMoves - 1, rules);
+					} else {
+						score = playout(rules, cells, direction, own);
+					}
+
+					if (score >= 0) {
+						sum += score;
+						count++;
+					}
+				}
+				return new long[] { sum, count };
+			}
+
+			int middle = from + (to - from) / 2;
+			Rollouts left = new Rollouts(rules, cells, packed, direction,
+					from, middle, deadline, random.split());
+			Rollouts right = new Rollouts(rules, cells, packed, direction,
+					middle, to, deadline, random.split());
+			left.fork();
+
+			long[] tally = right.compute();
+			long[] other = left.join();
+			tally[0] += other[0];
+			tally[1] += other[1];
+			return tally;
+		}
+	}
+}
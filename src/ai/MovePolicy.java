@@ -0,0 +1,28 @@
+package ai;
+
+import java.util.Random;
+
+import models.Board;
+import utilities.Direction;
+
+/**
+ * Strategy that picks the next direction to move a TEN! board in. A policy is
+ * used by one thread at a time, so it may keep state between calls.
+ */
+public interface MovePolicy {
+
+	/**
+	 * Choose the next direction to move in
+	 * 
+	 * @param board
+	 *            Current board, must not be changed by the policy
+	 * @param allowed
+	 *            Directions that move the board, bit Direction.ordinal() is
+	 *            set for every allowed direction, see Board.getLegalMoves().
+	 *            Never 0
+	 * @param rand
+	 *            Random of the calling thread
+	 * @return Direction to move in
+	 */
+	Direction choose(Board board, int allowed, Random rand);
+}
@@ -0,0 +1,24 @@
+package ai;
+
+import java.util.Random;
+
+import models.Board;
+import utilities.Direction;
+
+/**
+ * MovePolicy that picks one of the allowed directions at random
+ */
+public class RandomPolicy implements MovePolicy {
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	@Override
+	public Direction choose(Board board, int allowed, Random rand) {
+		// Pick the n-th set bit of allowed
+		int pick = rand.nextInt(Integer.bitCount(allowed));
+		for (int i = 0; i < pick; i++) {
+			allowed &= allowed - 1;
+		}
+		return DIRECTIONS[Integer.numberOfTrailingZeros(allowed)];
+	}
+}
@@ -0,0 +1,205 @@
+package ai;
+
+/**
+ * Bounded cache of search results keyed by a packed board. Entries live in
+ * parallel primitive arrays with open addressing, so nothing is boxed or
+ * allocated after construction.
+ * 
+ * A key is looked up in a bucket of a few neighbouring slots. When a new
+ * entry finds no free slot in its bucket it replaces the least useful one:
+ * entries from an older generation (an earlier search) go first, then the
+ * entry searched to the lowest depth.
+ * 
+ * Not thread safe, every search should use its own table.
+ */
+public class TranspositionTable {
+
+	/**
+	 * Memory used by one entry in bytes
+	 */
+	public static final int BYTES_PER_ENTRY = 8 + 4 + 1 + 1;
+
+	// Slots probed for a key
+	private static final int BUCKET = 4;
+
+	// Marks an empty slot, a packed board always has a value on it
+	private static final long EMPTY = 0;
+
+	private final long[] keys;
+	private final float[] values;
+	private final byte[] depths;
+	private final byte[] generations;
+
+	private final int mask;
+	private final int shift;
+
+	private byte generation;
+
+	private long hits;
+	private long misses;
+	private long replacements;
+
+	/**
+	 * Constructor for TranspositionTable
+	 * 
+	 * @param capacity
+	 *            Amount of entries, rounded up to a power of two
+	 */
+	public TranspositionTable(int capacity) {
+		int size = Integer.highestOneBit(Math.max(BUCKET, capacity - 1)) << 1;
+		keys = new long[size];
+		values = new float[size];
+		depths = new byte[size];
+		generations = new byte[size];
+
+		mask = size - 1;
+		shift = 64 - Integer.numberOfTrailingZeros(size);
+	}
+
+	/**
+	 * Create a table that uses at most the given amount of memory
+	 * 
+	 * @param megabytes
+	 *            Memory budget in MB
+	 * @return New table
+	 */
+	public static TranspositionTable ofMegabytes(int megabytes) {
+		long entries = (long) megabytes * 1024 * 1024 / BYTES_PER_ENTRY;
+		return new TranspositionTable(Integer.highestOneBit((int) Math.min(
+				entries, 1 << 30)));
+	}
+
+	/**
+	 * Start a new search, older entries are replaced first from now on
+	 */
+	public void nextGeneration() {
+		generation++;
+	}
+
+	/**
+	 * Look up the value of a board
+	 * 
+	 * @param key
+	 *            Packed board
+	 * @param depth
+	 *            Minimum depth the value must have been searched to
+	 * @return Value or Float.NaN if not found
+	 */
+	public float get(long key, int depth) {
+		int index = index(key);
+		for (int i = 0; i < BUCKET; i++) {
+			int slot = index + i & mask;
+			if (keys[slot] == key) {
+				if (depths[slot] >= depth) {
+					hits++;
+					return values[slot];
+				}
+				break;
+			}
+			if (keys[slot] == EMPTY) {
+				break;
+			}
+		}
+		misses++;
+		return Float.NaN;
+	}
+
+	/**
+	 * Store the value of a board
+	 * 
+	 * @param key
+	 *            Packed board
+	 * @param depth
+	 *            Depth the value was searched to
+	 * @param value
+	 *            Value of the board
+	 */
+	public void put(long key, int depth, float value) {
+		if (key == EMPTY) {
+			return;
+		}
+
+		int index = index(key);
+		int victim = -1;
+		int victimPriority = Integer.MAX_VALUE;
+		for (int i = 0; i < BUCKET; i++) {
+			int slot = index + i & mask;
+			if (keys[slot] == key) {
+				// Keep the deeper result of the same board
+				if (depth >= depths[slot] || generations[slot] != generation) {
+					store(slot, key, depth, value);
+				}
+				return;
+			}
+			if (keys[slot] == EMPTY) {
+				store(slot, key, depth, value);
+				return;
+			}
+
+			// Entries of older searches are worth less than any current one
+			int priority = depths[slot];
+			if (generations[slot] == generation) {
+				priority += Byte.MAX_VALUE + 1;
+			}
+			if (priority < victimPriority) {
+				victim = slot;
+				victimPriority = priority;
+			}
+		}
+
+		replacements++;
+		store(victim, key, depth, value);
+	}
+
+	/**
+	 * Remove all entries
+	 */
+	public void clear() {
+		for (int slot = 0; slot < keys.length; slot++) {
+			keys[slot] = EMPTY;
+		}
+		hits = 0;
+		misses = 0;
+		replacements = 0;
+	}
+
+	/**
+	 * @return Amount of entries that fit in the table
+	 */
+	public int capacity() {
+		return keys.length;
+	}
+
+	/**
+	 * @return Amount of successful lookups
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return Amount of failed lookups
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return Amount of entries overwritten by another board
+	 */
+	public long getReplacements() {
+		return replacements;
+	}
+
+	private int index(long key) {
+		// Fibonacci hashing, the high bits are mixed best
+		return (int) (key * 0x9E3779B97F4A7C15L >>> shift);
+	}
+
+	private void store(int slot, long key, int depth, float value) {
+		keys[slot] = key;
+		values[slot] = value;
+		depths[slot] = (byte) depth;
+		generations[slot] = generation;
+	}
+}
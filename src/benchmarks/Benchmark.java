@@ -0,0 +1,83 @@
+package benchmarks;
+
+/**
+ * A single benchmark: one operation measured in batches. State is created in
+ * setup, so benchmarks that are filtered out cost nothing. State that an
+ * operation changes is restored by prepare, which is not timed.
+ */
+public abstract class Benchmark {
+
+	private final String name;
+	private final String params;
+	private final int batch;
+
+	/**
+	 * Constructor for Benchmark
+	 * 
+	 * @param name
+	 *            Name of the measured method, e.g. Board.move
+	 * @param params
+	 *            Parameters of this case, e.g. size=4
+	 * @param batch
+	 *            Amount of operations between two calls to prepare
+	 */
+	protected Benchmark(String name, String params, int batch) {
+		this.name = name;
+		this.params = params;
+		this.batch = batch;
+	}
+
+	/**
+	 * Create the state of this benchmark, called once before it runs
+	 */
+	protected void setup() {
+	}
+
+	/**
+	 * Release the state of this benchmark, called once after it ran
+	 */
+	protected void tearDown() {
+	}
+
+	/**
+	 * Prepare the state for the next batch of operations, not timed
+	 */
+	protected void prepare() {
+	}
+
+	/**
+	 * Run one operation of a batch
+	 * 
+	 * @param index
+	 *            Index of the operation in the batch
+	 * @return Any value depending on the result, so the operation can not be
+	 *         optimised away
+	 */
+	protected abstract long run(int index);
+
+	/**
+	 * @return Name of the measured method
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return Parameters of this case
+	 */
+	public String getParams() {
+		return params;
+	}
+
+	/**
+	 * @return Amount of operations between two calls to prepare
+	 */
+	public int getBatch() {
+		return batch;
+	}
+
+	@Override
+	public String toString() {
+		return name + " " + params;
+	}
+}
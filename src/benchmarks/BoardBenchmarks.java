@@ -0,0 +1,529 @@
+package benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import models.Board;
+import models.Score;
+import utilities.BinaryFormat;
+import utilities.BoardListener;
+import utilities.ChangeSet;
+import utilities.Direction;
+import utilities.TextFormat;
+import views.AnimatedBoard;
+import views.BoardCanvas;
+import views.View;
+
+/**
+ * Benchmarks of the hot paths: Board.move with and without a listener,
+ * Board.reset, Score.update, TextFormat, BinaryFormat and drawing the board
+ * like View does, on an AnimatedBoard or a BoardCanvas
+ */
+public class BoardBenchmarks {
+
+	/**
+	 * Board sizes every benchmark is run for
+	 */
+	public static final int[] SIZES = { 4, 16, 256, 2048 };
+
+	/**
+	 * Board sizes View draws on an AnimatedBoard
+	 */
+	public static final int[] ANIMATED_SIZES = { 4, View.MAX_TILED_LENGTH };
+
+	/**
+	 * Board sizes View draws on a BoardCanvas
+	 */
+	public static final int[] CANVAS_SIZES = { 256, 2048 };
+
+	/**
+	 * Kinds of boards a move is measured on
+	 */
+	public enum Shape {
+		// About one in ten cells has a low value
+		SPARSE,
+		// Nine in ten cells have a random value
+		DENSE,
+		// Full board of equal pairs in both directions
+		MERGES
+	}
+
+	// Seed for generated boards, the same for every run
+	private static final long SEED = 20140622;
+
+	// Frames of one animated move at 60 frames per second
+	private static final int ANIMATION_FRAMES = 11;
+
+	// Pixels of the visible part of a BoardCanvas on both sides
+	private static final int VIEWPORT = 1024;
+
+	private BoardBenchmarks() {
+	}
+
+	/**
+	 * @return All benchmarks, without their state
+	 */
+	public static List<Benchmark> all() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		for (int size : SIZES) {
+			for (Shape shape : Shape.values()) {
+				for (Direction direction : Direction.values()) {
+					benchmarks.add(move(size, shape, direction));
+				}
+			}
+		}
+		for (int size : SIZES) {
+			for (Shape shape : Shape.values()) {
+				benchmarks.add(moveListened(size, shape));
+			}
+		}
+		for (int size : SIZES) {
+			benchmarks.add(reset(size));
+		}
+		for (int size : SIZES) {
+			benchmarks.add(scoreUpdate(size));
+		}
+		for (int size : SIZES) {
+			benchmarks.add(textWrite(size));
+			benchmarks.add(textRead(size));
+		}
+		for (int size : SIZES) {
+			benchmarks.add(binaryWrite(size));
+			benchmarks.add(binaryRead(size));
+		}
+		for (int size : ANIMATED_SIZES) {
+			benchmarks.add(animatedPaint(size));
+		}
+		for (int size : CANVAS_SIZES) {
+			benchmarks.add(canvasRepaint(size));
+		}
+		return benchmarks;
+	}
+
+	/**
+	 * Generate a board
+	 * 
+	 * @param size
+	 *            Length of one side
+	 * @param shape
+	 *            Kind of board
+	 * @return Int[][] of values on TEN! board
+	 */
+	public static int[][] board(int size, Shape shape) {
+		Random rand = new Random(SEED + size);
+		int[][] board = new int[size][size];
+		for (int row = 0; row < size; row++) {
+			for (int column = 0; column < size; column++) {
+				switch (shape) {
+				case SPARSE:
+					board[row][column] = rand.nextInt(10) == 0 ? rand
+							.nextInt(4) : -1;
+					break;
+				case DENSE:
+					board[row][column] = rand.nextInt(10) != 0 ? rand
+							.nextInt(10) : -1;
+					break;
+				case MERGES:
+					board[row][column] = (row / 2 + column / 2) % 9;
+					break;
+				}
+			}
+		}
+		return board;
+	}
+
+	// Amount of operations between two resets, one for big boards
+	private static int batch(int size) {
+		return Math.max(1, 16384 / (size * size));
+	}
+
+	private static Benchmark move(final int size, final Shape shape,
+			final Direction direction) {
+		return new Benchmark("Board.move", "size=" + size + ",shape="
+				+ shape.name().toLowerCase() + ",direction=" + direction,
+				batch(size)) {
+			private int[][] template;
+			private Board[] boards;
+
+			@Override
+			protected void setup() {
+				template = board(size, shape);
+				boards = new Board[getBatch()];
+				for (int i = 0; i < boards.length; i++) {
+					boards[i] = new Board(size, new Random(SEED));
+				}
+			}
+
+			@Override
+			protected void tearDown() {
+				template = null;
+				boards = null;
+			}
+
+			@Override
+			protected void prepare() {
+				for (Board board : boards) {
+					board.set(template);
+				}
+			}
+
+			@Override
+			protected long run(int index) {
+				return boards[index].move(direction) ? 1 : 0;
+			}
+		};
+	}
+
+	private static Benchmark moveListened(final int size, final Shape shape) {
+		return new Benchmark("Board.moveListened", "size=" + size + ",shape="
+				+ shape.name().toLowerCase(), batch(size)) {
+			private int[][] template;
+			private Board[] boards;
+
+			@Override
+			protected void setup() {
+				// Recording changes is only done while somebody listens
+				BoardListener listener = new BoardListener() {
+					@Override
+					public void boardChanged(ChangeSet changes) {
+					}
+				};
+
+				template = board(size, shape);
+				boards = new Board[getBatch()];
+				for (int i = 0; i < boards.length; i++) {
+					boards[i] = new Board(size, new Random(SEED));
+					boards[i].addListener(listener);
+				}
+			}
+
+			@Override
+			protected void tearDown() {
+				template = null;
+				boards = null;
+			}
+
+			@Override
+			protected void prepare() {
+				for (Board board : boards) {
+					board.set(template);
+				}
+			}
+
+			@Override
+			protected long run(int index) {
+				return boards[index].move(Direction.EAST) ? 1 : 0;
+			}
+		};
+	}
+
+	private static Benchmark reset(final int size) {
+		return new Benchmark("Board.reset", "size=" + size, batch(size)) {
+			private Board[] boards;
+
+			@Override
+			protected void setup() {
+				boards = new Board[getBatch()];
+				for (int i = 0; i < boards.length; i++) {
+					boards[i] = new Board(size, new Random(SEED));
+				}
+			}
+
+			@Override
+			protected void tearDown() {
+				boards = null;
+			}
+
+			@Override
+			protected long run(int index) {
+				boards[index].reset();
+				return boards[index].getScore();
+			}
+		};
+	}
+
+	private static Benchmark scoreUpdate(final int size) {
+		return new Benchmark("Score.update", "size=" + size, batch(size)) {
+			private int[][] board;
+			private Score score;
+
+			@Override
+			protected void setup() {
+				board = board(size, Shape.DENSE);
+				score = new Score();
+			}
+
+			@Override
+			protected void tearDown() {
+				board = null;
+				score = null;
+			}
+
+			@Override
+			protected long run(int index) {
+				score.update(board);
+				return score.get();
+			}
+		};
+	}
+
+	private static Benchmark textWrite(final int size) {
+		return new Benchmark("TextFormat.write", "size=" + size, 1) {
+			private int[][] board;
+			private Path file;
+
+			@Override
+			protected void setup() {
+				board = board(size, Shape.DENSE);
+				file = tempFile();
+			}
+
+			@Override
+			protected void tearDown() {
+				deleteFile(file);
+				board = null;
+			}
+
+			@Override
+			protected long run(int index) {
+				try {
+					TextFormat.write(board, file);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return board.length;
+			}
+		};
+	}
+
+	private static Benchmark textRead(final int size) {
+		return new Benchmark("TextFormat.read", "size=" + size, 1) {
+			private Path file;
+
+			@Override
+			protected void setup() {
+				file = tempFile();
+				try {
+					TextFormat.write(board(size, Shape.DENSE), file);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			@Override
+			protected void tearDown() {
+				deleteFile(file);
+			}
+
+			@Override
+			protected long run(int index) {
+				try {
+					return TextFormat.read(file).length;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+
+	private static Benchmark binaryWrite(final int size) {
+		return new Benchmark("BinaryFormat.write", "size=" + size, 1) {
+			private int[][] board;
+			private Path file;
+
+			@Override
+			protected void setup() {
+				board = board(size, Shape.DENSE);
+				file = tempFile();
+			}
+
+			@Override
+			protected void tearDown() {
+				deleteFile(file);
+				board = null;
+			}
+
+			@Override
+			protected long run(int index) {
+				try {
+					BinaryFormat.write(board, file);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return board.length;
+			}
+		};
+	}
+
+	private static Benchmark binaryRead(final int size) {
+		return new Benchmark("BinaryFormat.read", "size=" + size, 1) {
+			private Path file;
+
+			@Override
+			protected void setup() {
+				file = tempFile();
+				try {
+					BinaryFormat.write(board(size, Shape.DENSE), file);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			@Override
+			protected void tearDown() {
+				deleteFile(file);
+			}
+
+			@Override
+			protected long run(int index) {
+				try {
+					return BinaryFormat.read(file).length;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+
+	private static Path tempFile() {
+		try {
+			return Files.createTempFile("benchmark", BinaryFormat.EXTENSION);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void deleteFile(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			// Left behind in the temporary directory
+		}
+	}
+
+	/**
+	 * Record the changes a board publishes when it is set to a board of a
+	 * shape and then moved
+	 * 
+	 * @return The changes of setting the board, then those of every move
+	 */
+	private static ChangeSet[] recordChanges(int size, Shape shape,
+			Direction... moves) {
+		final ChangeSet recorded = new ChangeSet();
+		Board board = new Board(size, new Random(SEED));
+		board.addListener(new BoardListener() {
+			@Override
+			public void boardChanged(ChangeSet changeSet) {
+				recorded.clear(changeSet.getLength());
+				recorded.setDirection(changeSet.getDirection());
+				recorded.addAll(changeSet);
+			}
+		});
+
+		ChangeSet[] changes = new ChangeSet[moves.length + 1];
+		for (int i = 0; i < changes.length; i++) {
+			if (i == 0) {
+				board.set(board(size, shape));
+			} else {
+				board.move(moves[i - 1]);
+			}
+			changes[i] = new ChangeSet();
+			changes[i].clear(size);
+			changes[i].setDirection(recorded.getDirection());
+			changes[i].addAll(recorded);
+		}
+		return changes;
+	}
+
+	private static Benchmark animatedPaint(final int size) {
+		return new Benchmark("AnimatedBoard.paint", "size=" + size,
+				ANIMATION_FRAMES) {
+			private ChangeSet[] changes;
+			private AnimatedBoard animated;
+			private BufferedImage screen;
+
+			@Override
+			protected void setup() {
+				changes = recordChanges(size, Shape.DENSE, Direction.EAST);
+
+				// Never shown in a window, frames are drawn into a
+				// BufferedImage like on a screen without VolatileImage
+				animated = new AnimatedBoard(size);
+				animated.setSize(animated.getPreferredSize());
+				screen = new BufferedImage(animated.getWidth(),
+						animated.getHeight(), BufferedImage.TYPE_INT_RGB);
+			}
+
+			@Override
+			protected void tearDown() {
+				changes = null;
+				animated = null;
+				screen = null;
+			}
+
+			@Override
+			protected void prepare() {
+				// A new board and a move, whose animation the batch draws
+				animated.boardChanged(changes[0]);
+				animated.boardChanged(changes[1]);
+			}
+
+			@Override
+			protected long run(int index) {
+				Graphics2D g = screen.createGraphics();
+				animated.paint(g);
+				g.dispose();
+				return screen.getRGB(index % screen.getWidth(), 0);
+			}
+		};
+	}
+
+	private static Benchmark canvasRepaint(final int size) {
+		return new Benchmark("BoardCanvas.repaint", "size=" + size,
+				batch(size)) {
+			private ChangeSet[] changes;
+			private BoardCanvas canvas;
+			private BufferedImage screen;
+
+			@Override
+			protected void setup() {
+				// Changes of a move one way and back again, recorded once
+				changes = recordChanges(size, Shape.DENSE, Direction.EAST,
+						Direction.WEST);
+
+				// Zoomed like View opens it, painted through a viewport at
+				// the top left of the board
+				canvas = new BoardCanvas(size, View.CANVAS_CELL_SIZE);
+				canvas.setSize(canvas.getPreferredSize());
+				canvas.apply(changes[0]);
+				int viewport = Math.min(VIEWPORT, canvas.getWidth());
+				screen = new BufferedImage(viewport, viewport,
+						BufferedImage.TYPE_INT_RGB);
+			}
+
+			@Override
+			protected void tearDown() {
+				changes = null;
+				canvas = null;
+				screen = null;
+			}
+
+			@Override
+			protected long run(int index) {
+				canvas.apply(changes[1 + index % 2]);
+				Graphics2D g = screen.createGraphics();
+				g.setClip(0, 0, screen.getWidth(), screen.getHeight());
+				canvas.paint(g);
+				g.dispose();
+				return screen.getRGB(index % screen.getWidth(), 0);
+			}
+		};
+	}
+}
@@ -0,0 +1,233 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Runs benchmarks with warmup and measurement iterations and writes the
+ * results as CSV, one line per benchmark: name, params, mean and error in
+ * nanoseconds per operation. Two result files can be compared to find
+ * regressions.
+ * 
+ * Usage:
+ * 
+ * <pre>
+ * Runner [--filter regex] [--warmup n] [--iterations n] [--time ms] [--out file]
+ * Runner --compare base.csv new.csv [--threshold percent]
+ * </pre>
+ */
+public class Runner {
+
+	private static final String HEADER = "benchmark,params,mean,error,unit";
+
+	// Sum of all results, stored so no operation can be optimized away
+	private static volatile long sink;
+
+	private int warmups = 5;
+	private int iterations = 10;
+	private long iterationNanos = 200000000;
+
+	/**
+	 * Result of one benchmark
+	 */
+	public static class Result {
+		final String name;
+		final String params;
+		final double mean;
+		final double error;
+
+		Result(String name, String params, double mean, double error) {
+			this.name = name;
+			this.params = params;
+			this.mean = mean;
+			this.error = error;
+		}
+
+		String key() {
+			return name + " " + params;
+		}
+
+		String toCsv() {
+			return String.format(Locale.US, "%s,\"%s\",%.3f,%.3f,ns/op", name,
+					params, mean, error);
+		}
+
+		static Result fromCsv(String line) {
+			// The params are quoted because they contain commas
+			int open = line.indexOf('"');
+			int close = line.indexOf('"', open + 1);
+			String[] numbers = line.substring(close + 2).split(",");
+			return new Result(line.substring(0, open - 1), line.substring(
+					open + 1, close), Double.parseDouble(numbers[0]),
+					Double.parseDouble(numbers[1]));
+		}
+	}
+
+	/**
+	 * Measure a single benchmark
+	 * 
+	 * @param benchmark
+	 *            Benchmark to run
+	 * @return Mean time per operation and its standard deviation over the
+	 *         measurement iterations
+	 */
+	public Result run(Benchmark benchmark) {
+		benchmark.setup();
+		for (int i = 0; i < warmups; i++) {
+			iteration(benchmark);
+		}
+
+		double[] scores = new double[iterations];
+		double mean = 0;
+		for (int i = 0; i < iterations; i++) {
+			scores[i] = iteration(benchmark);
+			mean += scores[i] / iterations;
+		}
+		benchmark.tearDown();
+
+		double variance = 0;
+		for (double score : scores) {
+			variance += (score - mean) * (score - mean);
+		}
+		double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1))
+				: 0;
+
+		return new Result(benchmark.getName(), benchmark.getParams(), mean,
+				error);
+	}
+
+	/**
+	 * Run batches until the iteration time is used up
+	 * 
+	 * @return Nanoseconds per operation
+	 */
+	private double iteration(Benchmark benchmark) {
+		long operations = 0;
+		long time = 0;
+		long result = 0;
+		while (time < iterationNanos) {
+			benchmark.prepare();
+
+			long start = System.nanoTime();
+			for (int i = 0; i < benchmark.getBatch(); i++) {
+				result += benchmark.run(i);
+			}
+			time += System.nanoTime() - start;
+
+			operations += benchmark.getBatch();
+		}
+		sink += result;
+		return (double) time / operations;
+	}
+
+	/**
+	 * Compare two result files
+	 * 
+	 * @param base
+	 *            Results of the earlier run
+	 * @param current
+	 *            Results of the new run
+	 * @param threshold
+	 *            Slowdown in percent that counts as a regression, when it is
+	 *            also larger than the errors of both runs
+	 * @return Amount of regressions
+	 */
+	static int compare(Path base, Path current, double threshold)
+			throws IOException {
+		Map<String, Result> before = read(base);
+		int regressions = 0;
+
+		System.out.printf("%-70s %14s %14s %8s%n", "benchmark", "base ns/op",
+				"new ns/op", "change");
+		for (Result result : read(current).values()) {
+			Result old = before.get(result.key());
+			if (old == null) {
+				System.out.printf("%-70s %14s %14.1f %8s%n", result.key(), "-",
+						result.mean, "new");
+				continue;
+			}
+
+			double change = (result.mean - old.mean) / old.mean * 100;
+			boolean regression = change > threshold
+					&& result.mean - old.mean > result.error + old.error;
+			if (regression) {
+				regressions++;
+			}
+			System.out.printf("%-70s %14.1f %14.1f %+7.1f%%%s%n", result.key(),
+					old.mean, result.mean, change, regression ? " REGRESSION"
+							: "");
+		}
+		return regressions;
+	}
+
+	private static Map<String, Result> read(Path path) throws IOException {
+		Map<String, Result> results = new LinkedHashMap<String, Result>();
+		for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+			if (!line.isEmpty() && !line.equals(HEADER)) {
+				Result result = Result.fromCsv(line);
+				results.put(result.key(), result);
+			}
+		}
+		return results;
+	}
+
+	public static void main(String[] args) throws IOException {
+		// The View benchmark never shows a window
+		System.setProperty("java.awt.headless", "true");
+
+		if (args.length >= 3 && args[0].equals("--compare")) {
+			double threshold = 10;
+			if (args.length >= 5 && args[3].equals("--threshold")) {
+				threshold = Double.parseDouble(args[4]);
+			}
+			int regressions = compare(Paths.get(args[1]), Paths.get(args[2]),
+					threshold);
+			System.out.println(regressions + " regression(s)");
+			System.exit(regressions == 0 ? 0 : 1);
+		}
+
+		Runner runner = new Runner();
+		Pattern filter = Pattern.compile(".*");
+		Path out = null;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("--filter")) {
+				filter = Pattern.compile(args[i + 1]);
+			} else if (args[i].equals("--warmup")) {
+				runner.warmups = Integer.parseInt(args[i + 1]);
+			} else if (args[i].equals("--iterations")) {
+				runner.iterations = Math.max(1, Integer.parseInt(args[i + 1]));
+			} else if (args[i].equals("--time")) {
+				runner.iterationNanos = Long.parseLong(args[i + 1]) * 1000000;
+			} else if (args[i].equals("--out")) {
+				out = Paths.get(args[i + 1]);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+
+		List<String> lines = new ArrayList<String>();
+		lines.add(HEADER);
+		System.out.println(HEADER);
+		for (Benchmark benchmark : BoardBenchmarks.all()) {
+			if (!filter.matcher(benchmark.toString()).find()) {
+				continue;
+			}
+			String line = runner.run(benchmark).toCsv();
+			lines.add(line);
+			System.out.println(line);
+		}
+
+		if (out != null) {
+			Files.write(out, lines, StandardCharsets.UTF_8);
+		}
+	}
+}
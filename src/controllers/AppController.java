@@ -4,25 +4,64 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Set;
 
+import javax.swing.ButtonModel;
+import javax.swing.SwingUtilities;
+
+import metrics.Metrics;
+import metrics.Metrics.Stage;
 import models.Board;
+import models.History;
+import models.Journal;
+import models.RandomSpawnPolicy;
+import models.RuleSet;
 import utilities.Direction;
 import utilities.FileHandler;
+import utilities.SeededRandom;
 import views.View;
 
 /**
  * Controller class: AppController handles behaviour and communication between
  * Model and View so that they don't know each other
  * 
+ * Arrow keys don't click the buttons, which would hold up the event dispatch
+ * thread while the click is animated. A key press only shows its button
+ * pressed and puts the move in an InputQueue, which is emptied one move at a
+ * time between the other events.
+ * 
  * @author <a href="mailto:mamoru@edwinmiltenburg.nl">Edwin Miltenburg</a>
  * 
  */
 public class AppController {
 
+	// Memory for undo and redo, half a million states of a 4x4 board. A
+	// larger board gets at least the two states undo needs
+	private static final long HISTORY_BYTES = 4 << 20;
+
 	private Board board;
 
+	// Seeded per game so the journal can replay it
+	private SeededRandom rand = new SeededRandom();
+	private Journal journal;
+
 	private View view;
 
+	// Moves asked for by keys, and the arrow keys held down
+	private InputQueue input = new InputQueue();
+	private Set<Direction> held = EnumSet.noneOf(Direction.class);
+	private boolean draining;
+
+	private final Runnable drainInput = new Runnable() {
+		@Override
+		public void run() {
+			drainInput();
+		}
+	};
+
 	/**
 	 * Constructor for AppController. Creates default 4x4 board game of TEN!
 	 */
@@ -37,19 +76,34 @@ public class AppController {
 	 *            Length of one side of the board
 	 */
 	public AppController(int size) {
-		board = new Board(size);
-		// Board(int) handles parameter validation, thus view gets correct size
+		this(RuleSet.DEFAULT.withLength(size));
+	}
+
+	/**
+	 * Constructor for AppController. Creates a game of a variant of TEN!
+	 * 
+	 * @param rules
+	 *            Rules of the game, including the length of one side
+	 */
+	public AppController(RuleSet rules) {
+		board = new Board(rules, new RandomSpawnPolicy(rand));
+		board.setHistory(Math.max(HISTORY_BYTES,
+				2 * History.bytesPerState(board.getLength())));
+		// RuleSet handles parameter validation, thus view gets correct size
 		view = new View(board.getLength());
 
+		// Replayer plays by the original rules only
+		view.getMenuItemStoreJournal().setEnabled(rules.isOriginal());
+
 		// When Model is updated, update View too
-		board.addObserver(view);
-		board.addScoreObserver(view.getScoreView());
+		board.addListener(view);
+		board.addScoreListener(view.getScoreView());
 
 		// Link View Actions to Model
 		handleActions();
 
 		// Load new game
-		board.reset();
+		resetBoard();
 
 		// Show GUI
 		view.create();
@@ -61,24 +115,28 @@ public class AppController {
 	private void handleActions() {
 
 		// KEYS
-		// Press the respective direction button
+		// Queue the move and show the respective direction button pressed
 		KeyAdapter keyHandler = new KeyAdapter() {
 			@Override
 			public void keyPressed(KeyEvent e) {
-				if (e.getKeyCode() == KeyEvent.VK_LEFT)
-					Direction.WEST.button().doClick();
-				else if (e.getKeyCode() == KeyEvent.VK_RIGHT)
-					Direction.EAST.button().doClick();
-				else if (e.getKeyCode() == KeyEvent.VK_UP)
-					Direction.NORTH.button().doClick();
-				else if (e.getKeyCode() == KeyEvent.VK_DOWN)
-					Direction.SOUTH.button().doClick();
+				Direction direction = direction(e.getKeyCode());
+				if (direction != null) {
+					pressKey(direction);
+				}
+			}
+
+			@Override
+			public void keyReleased(KeyEvent e) {
+				Direction direction = direction(e.getKeyCode());
+				if (direction != null) {
+					releaseKey(direction);
+				}
 			}
 		};
 
 		// BUTTONS
 		for (final Direction direction : Direction.values()) {
-			direction.button().addActionListener(new ActionListener() {
+			view.getButton(direction).addActionListener(new ActionListener() {
 				@Override
 				public void actionPerformed(ActionEvent actionEvent) {
 					move(direction);
@@ -86,15 +144,39 @@ public class AppController {
 			});
 
 			// Buttons will have focus and should listen for key presses
-			direction.button().addKeyListener(keyHandler);
+			view.getButton(direction).addKeyListener(keyHandler);
 		}
 
 		// MENU
 		view.getMenuItemLoad().addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent arg0) {
-				board.set(FileHandler.boardLoadFromFile());
-				resetButtons();
+				int[][] loaded = FileHandler.boardLoadFromFile(board
+						.getLength());
+				board.set(loaded);
+				if (loaded != null) {
+					// Journal continues from the loaded board
+					journal = new Journal(board.getLength(), rand.getState(),
+							board.get());
+				}
+				updateButtons();
+				gameOver();
+			}
+		});
+		view.getMenuItemUndo().addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent arg0) {
+				if (board.undo()) {
+					restored();
+				}
+			}
+		});
+		view.getMenuItemRedo().addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent arg0) {
+				if (board.redo()) {
+					restored();
+				}
 			}
 		});
 		view.getMenuItemStore().addActionListener(new ActionListener() {
@@ -103,7 +185,88 @@ public class AppController {
 				FileHandler.boardStoreAsFile(board.get());
 			}
 		});
+		view.getMenuItemStoreJournal().addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent arg0) {
+				storeJournal();
+			}
+		});
+
+	}
+
+	/**
+	 * @param keyCode
+	 *            Key code of a KeyEvent
+	 * @return Direction of an arrow key, null for other keys
+	 */
+	private static Direction direction(int keyCode) {
+		switch (keyCode) {
+		case KeyEvent.VK_LEFT:
+			return Direction.WEST;
+		case KeyEvent.VK_RIGHT:
+			return Direction.EAST;
+		case KeyEvent.VK_UP:
+			return Direction.NORTH;
+		case KeyEvent.VK_DOWN:
+			return Direction.SOUTH;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Queue a move for an arrow key, a key still held down repeats
+	 * 
+	 * @param direction
+	 *            Direction of the key
+	 */
+	private void pressKey(Direction direction) {
+		boolean repeat = !held.add(direction);
+
+		// Armed and pressed looks pressed, pressing doesn't click yet
+		ButtonModel button = view.getButton(direction).getModel();
+		button.setArmed(true);
+		button.setPressed(true);
+
+		if (input.offer(direction, repeat) && !draining) {
+			draining = true;
+			SwingUtilities.invokeLater(drainInput);
+		}
+	}
+
+	/**
+	 * Show the button of an arrow key released
+	 * 
+	 * @param direction
+	 *            Direction of the key
+	 */
+	private void releaseKey(Direction direction) {
+		held.remove(direction);
+
+		// Disarmed first, releasing an armed button would click it
+		ButtonModel button = view.getButton(direction).getModel();
+		button.setArmed(false);
+		button.setPressed(false);
+	}
 
+	/**
+	 * Make the first queued move, and come back for the next one after the
+	 * events that arrived meanwhile
+	 */
+	private void drainInput() {
+		Direction direction = input.poll();
+		if (direction != null) {
+			if (Metrics.ENABLED) {
+				Metrics.record(Stage.INPUT, input.getPolledTime());
+			}
+			move(direction);
+		}
+
+		if (input.isEmpty()) {
+			draining = false;
+		} else {
+			SwingUtilities.invokeLater(drainInput);
+		}
 	}
 
 	/**
@@ -113,60 +276,97 @@ public class AppController {
 	 *            Which way to move the values on the TEN! board
 	 */
 	private void move(Direction direction) {
-		// Skip if already known that this direction has no more moves
-		if (!direction.button().isEnabled()) {
+		// Skip if this direction does not change the board
+		if (!board.isLegal(direction)) {
 			return;
 		}
 
-		if (board.move(direction)) {
-			// Board changed, reset buttons, check if game won
-			resetButtons();
-			gameWon();
-		} else {
-			// Board has not changed, disable button, check if game over
-			direction.button().setEnabled(false);
-			gameOver();
-		}
+		// Record move, update buttons, check if game won or over
+		board.move(direction);
+		journal.add(direction);
+		updateButtons();
+		gameWon();
+		gameOver();
 	}
 
 	/**
 	 * Checks if movement possible, if not invoke game over
 	 */
 	private void gameOver() {
-		for (Direction direction : Direction.values()) {
-			if (direction.button().isEnabled()) {
-				return;
-			}
+		if (board.getLegalMoves() != 0) {
+			return;
 		}
 		view.displayGameOver(board.getScore());
 		resetBoard();
 	}
 
 	/**
-	 * Checks if score is at least 10 and ends the game, congratulating player
+	 * Checks if score reaches the target of the rules and ends the game,
+	 * congratulating player
 	 */
 	private void gameWon() {
-		if (board.getScore() > 99) {
-			view.displayGameWon();
+		RuleSet rules = board.getRules();
+		if (rules.isWon(board.getScore())) {
+			view.displayGameWon(rules.getTarget());
 			resetBoard();
 		}
 	}
 
 	/**
-	 * Resets buttons in every direction
+	 * After undo or redo the journal continues from the restored board, the
+	 * moves that led to it may have been undone
 	 */
-	private void resetButtons() {
+	private void restored() {
+		journal = new Journal(board.getLength(), rand.getState(), board.get());
+		updateButtons();
+	}
+
+	/**
+	 * Enables buttons, undo and redo for what the board allows
+	 */
+	private void updateButtons() {
 		for (Direction direction : Direction.values()) {
-			direction.button().setEnabled(true);
+			view.getButton(direction).setEnabled(board.isLegal(direction));
 		}
+		view.getMenuItemUndo().setEnabled(board.canUndo());
+		view.getMenuItemRedo().setEnabled(board.canRedo());
 	}
 
 	/**
 	 * Resets and starts new game
 	 */
 	private void resetBoard() {
-		resetButtons();
+		newGame();
+		updateButtons();
+	}
+
+	/**
+	 * Seeds the board and starts a new game and journal
+	 */
+	private void newGame() {
+		// Keys pressed for the last game don't move the new one
+		input.clear();
+
+		long seed = new SeededRandom().nextLong();
+		rand.setSeed(seed);
 		board.reset();
+		board.clearHistory();
+		journal = new Journal(board.getLength(), seed, null);
+	}
+
+	/**
+	 * Stores the journal of the current game using JFileChooser
+	 */
+	private void storeJournal() {
+		Path path = FileHandler.selectStoreFile();
+		if (path == null) {
+			return;
+		}
+		try {
+			journal.write(path);
+		} catch (IOException e) {
+			FileHandler.showError("Store failed", e);
+		}
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package controllers;
+
+import utilities.Direction;
+
+/**
+ * Bounded queue of moves asked for by the keyboard, used on the event
+ * dispatch thread only. Presses beyond the capacity are dropped, and so is
+ * key repeat while earlier moves are still waiting, holding a key never
+ * builds up a backlog of moves.
+ */
+class InputQueue {
+
+	/**
+	 * Moves that may wait at once
+	 */
+	static final int CAPACITY = 4;
+
+	private final Direction[] directions = new Direction[CAPACITY];
+
+	// System.nanoTime() of every offer
+	private final long[] times = new long[CAPACITY];
+
+	private int head;
+	private int size;
+
+	// Time of the move polled last
+	private long polledTime;
+
+	/**
+	 * Add a move at the end of the queue
+	 * 
+	 * @param direction
+	 *            Which way to move the values on the TEN! board
+	 * @param repeat
+	 *            Whether the key is held down and repeats
+	 * @return False if the move was dropped
+	 */
+	boolean offer(Direction direction, boolean repeat) {
+		if (size == CAPACITY || repeat && size > 0) {
+			return false;
+		}
+		int tail = (head + size) % CAPACITY;
+		directions[tail] = direction;
+		times[tail] = System.nanoTime();
+		size++;
+		return true;
+	}
+
+	/**
+	 * Take the first move of the queue
+	 * 
+	 * @return Direction of the move, null when the queue is empty
+	 */
+	Direction poll() {
+		if (size == 0) {
+			return null;
+		}
+		Direction direction = directions[head];
+		polledTime = times[head];
+		directions[head] = null;
+		head = (head + 1) % CAPACITY;
+		size--;
+		return direction;
+	}
+
+	/**
+	 * @return System.nanoTime() when the move polled last was offered
+	 */
+	long getPolledTime() {
+		return polledTime;
+	}
+
+	/**
+	 * @return Whether no move is waiting
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Drop every waiting move
+	 */
+	void clear() {
+		while (poll() != null) {
+			// Forget it
+		}
+	}
+}
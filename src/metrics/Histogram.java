@@ -0,0 +1,138 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of non-negative values, usually nanoseconds, that any thread
+ * can record into without locking.
+ * 
+ * Values below 2 * SUB_BUCKETS are counted exactly. Larger values fall into
+ * buckets per power of two, split into SUB_BUCKETS equal parts, so a
+ * percentile is at most 1 / SUB_BUCKETS off. The buckets take a fixed 8 KB,
+ * recording never allocates.
+ */
+public class Histogram {
+
+	// Bits of a value below its highest bit that pick the sub bucket
+	private static final int SUB_BITS = 4;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(
+			64 * SUB_BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Count a value
+	 * 
+	 * @param value
+	 *            Value to count, negative values are counted as 0
+	 */
+	public void record(long value) {
+		value = Math.max(0, value);
+
+		// Raised before counting, so a percentile that sees the count is not
+		// capped below the value. Only ever raised: a thread that loses the
+		// race compares against the new max
+		long seen = max.get();
+		while (value > seen && !max.compareAndSet(seen, value)) {
+			seen = max.get();
+		}
+
+		counts.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+	}
+
+	/**
+	 * @return Amount of counted values
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return Largest counted value, 0 when none were counted
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return Average of the counted values, 0 when none were counted
+	 */
+	public double getMean() {
+		long counted = count.sum();
+		return counted == 0 ? 0 : (double) sum.sum() / counted;
+	}
+
+	/**
+	 * Value that a part of the counted values does not exceed
+	 * 
+	 * @param percentile
+	 *            Part of the values between 0 and 100
+	 * @return Middle of the bucket holding the percentile, 0 when none were
+	 *         counted
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			total += counts.get(i);
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long largest = max.get();
+		if (percentile >= 100) {
+			return largest;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				long lowest = lowest(i);
+				return Math.min(largest, lowest + (lowest(i + 1) - lowest) / 2);
+			}
+		}
+		return largest;
+	}
+
+	/**
+	 * Forget all counted values. Values counted at the same time may be lost
+	 * or partly kept
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	private static int index(long value) {
+		if (value < 2 * SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS
+				+ (int) (value >>> shift & SUB_BUCKETS - 1);
+	}
+
+	/**
+	 * Smallest value counted in a bucket
+	 */
+	private static long lowest(int index) {
+		if (index < 2 * SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+	}
+}
@@ -0,0 +1,290 @@
+package metrics;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Latency histograms and counters of the game, shared by every Board and
+ * View in the process.
+ * 
+ * Metrics are off unless the JVM is started with -Dten.metrics=true. ENABLED
+ * is a static final, every measurement is guarded by it and the JIT removes
+ * the guarded code when it is false, so disabled metrics cost nothing. When
+ * enabled they are registered over JMX as ten:type=Metrics, and with
+ * -Dten.metrics.dump=seconds also printed to System.err at that period.
+ * 
+ * A stage is measured with System.nanoTime() before it and record() after
+ * it. record() returns the time it read, so the next stage can start there.
+ */
+public final class Metrics {
+
+	/**
+	 * Whether metrics are collected, read once from ten.metrics
+	 */
+	public static final boolean ENABLED = Boolean.getBoolean("ten.metrics");
+
+	/**
+	 * Measured stages
+	 */
+	public enum Stage {
+		/** Wait of a key press in the input queue of AppController */
+		INPUT,
+		/** Board.move without telling anybody */
+		MOVE,
+		/** Score.update after a change of the board */
+		SCORE,
+		/** BoardListeners told of a change */
+		NOTIFY,
+		/** Wait of a View update in the event queue */
+		QUEUE,
+		/**
+		 * View taking in changed cells: a BoardCanvas update on the event
+		 * dispatch thread, or the Animation of an AnimatedBoard
+		 */
+		VIEW,
+		/** AnimatedBoard drawing a frame */
+		FRAME
+	}
+
+	private static final Map<Stage, Histogram> HISTOGRAMS;
+
+	private static final LongAdder MOVES = new LongAdder();
+	private static final LongAdder MERGES = new LongAdder();
+	private static final LongAdder SPAWNS = new LongAdder();
+
+	private static volatile long started = System.nanoTime();
+
+	static {
+		HISTOGRAMS = new EnumMap<Stage, Histogram>(Stage.class);
+		for (Stage stage : Stage.values()) {
+			HISTOGRAMS.put(stage, new Histogram());
+		}
+
+		if (ENABLED) {
+			register();
+			long period = Long.getLong("ten.metrics.dump", 0);
+			if (period > 0) {
+				startDump(period, System.err);
+			}
+		}
+	}
+
+	private Metrics() {
+	}
+
+	/**
+	 * Count the time since the start of a stage
+	 * 
+	 * @param stage
+	 *            Measured stage
+	 * @param start
+	 *            System.nanoTime() at the start of the stage
+	 * @return System.nanoTime() at the end of the stage
+	 */
+	public static long record(Stage stage, long start) {
+		long end = System.nanoTime();
+		HISTOGRAMS.get(stage).record(end - start);
+		return end;
+	}
+
+	/**
+	 * Count a move that changed a board
+	 */
+	public static void moved() {
+		MOVES.increment();
+	}
+
+	/**
+	 * Count a merge of two cells
+	 */
+	public static void merged() {
+		MERGES.increment();
+	}
+
+	/**
+	 * Count a zero placed by a move
+	 */
+	public static void spawned() {
+		SPAWNS.increment();
+	}
+
+	/**
+	 * @param stage
+	 *            Measured stage
+	 * @return Latencies of the stage in nanoseconds
+	 */
+	public static Histogram get(Stage stage) {
+		return HISTOGRAMS.get(stage);
+	}
+
+	/**
+	 * @return Moves that changed a board
+	 */
+	public static long getMoves() {
+		return MOVES.sum();
+	}
+
+	/**
+	 * @return Merges of two cells into one
+	 */
+	public static long getMerges() {
+		return MERGES.sum();
+	}
+
+	/**
+	 * @return Zeroes placed by moves
+	 */
+	public static long getSpawns() {
+		return SPAWNS.sum();
+	}
+
+	/**
+	 * Start counting again
+	 */
+	public static void reset() {
+		for (Histogram histogram : HISTOGRAMS.values()) {
+			histogram.reset();
+		}
+		MOVES.reset();
+		MERGES.reset();
+		SPAWNS.reset();
+		started = System.nanoTime();
+	}
+
+	/**
+	 * @return Counters and a line per stage with latencies in microseconds
+	 */
+	public static String dump() {
+		StringBuilder text = new StringBuilder();
+		double seconds = (System.nanoTime() - started) / 1e9;
+		long moves = getMoves();
+		text.append(String.format(Locale.US,
+				"moves %d (%.1f/s), merges/move %.2f, spawns %d%n", moves,
+				moves / seconds, mergesPerMove(), getSpawns()));
+		text.append(String.format(Locale.US,
+				"%-7s %10s %10s %10s %10s %10s%n", "stage", "count",
+				"mean us", "p50 us", "p99 us", "max us"));
+		for (Stage stage : Stage.values()) {
+			Histogram histogram = HISTOGRAMS.get(stage);
+			text.append(String.format(Locale.US,
+					"%-7s %10d %10.1f %10.1f %10.1f %10.1f%n", stage
+							.toString().toLowerCase(Locale.US), histogram
+							.getCount(), histogram.getMean() / 1e3, histogram
+							.getPercentile(50) / 1e3, histogram
+							.getPercentile(99) / 1e3,
+					histogram.getMax() / 1e3));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Print the dump periodically on a daemon thread
+	 * 
+	 * @param seconds
+	 *            Seconds between two dumps
+	 * @param out
+	 *            Stream to print to
+	 */
+	public static void startDump(long seconds, final PrintStream out) {
+		ScheduledExecutorService dumper = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "metrics-dump");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		dumper.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				out.print(dump());
+				out.flush();
+			}
+		}, seconds, seconds, TimeUnit.SECONDS);
+	}
+
+	private static double mergesPerMove() {
+		long moves = getMoves();
+		return moves == 0 ? 0 : (double) getMerges() / moves;
+	}
+
+	private static void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(
+					new Bean(), new ObjectName("ten:type=Metrics"));
+		} catch (JMException e) {
+			System.err.println("Metrics not registered: " + e);
+		}
+	}
+
+	/**
+	 * Metrics as seen over JMX
+	 */
+	private static class Bean implements MetricsMXBean {
+
+		@Override
+		public long getMoves() {
+			return Metrics.getMoves();
+		}
+
+		@Override
+		public long getMerges() {
+			return Metrics.getMerges();
+		}
+
+		@Override
+		public long getSpawns() {
+			return Metrics.getSpawns();
+		}
+
+		@Override
+		public double getMovesPerSecond() {
+			return getMoves() / ((System.nanoTime() - started) / 1e9);
+		}
+
+		@Override
+		public double getMergesPerMove() {
+			return mergesPerMove();
+		}
+
+		@Override
+		public Map<String, Double> getLatencies() {
+			Map<String, Double> latencies = new LinkedHashMap<String, Double>();
+			for (Stage stage : Stage.values()) {
+				Histogram histogram = HISTOGRAMS.get(stage);
+				String name = stage.toString().toLowerCase(Locale.US);
+				latencies.put(name + ".count", (double) histogram.getCount());
+				latencies.put(name + ".mean", histogram.getMean() / 1e3);
+				latencies.put(name + ".p50",
+						histogram.getPercentile(50) / 1e3);
+				latencies.put(name + ".p99",
+						histogram.getPercentile(99) / 1e3);
+				latencies.put(name + ".max", histogram.getMax() / 1e3);
+			}
+			return latencies;
+		}
+
+		@Override
+		public String dump() {
+			return Metrics.dump();
+		}
+
+		@Override
+		public void reset() {
+			Metrics.reset();
+		}
+	}
+}
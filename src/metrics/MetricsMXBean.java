@@ -0,0 +1,51 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of Metrics, registered as ten:type=Metrics when
+ * metrics are enabled
+ */
+public interface MetricsMXBean {
+
+	/**
+	 * @return Moves that changed a board
+	 */
+	long getMoves();
+
+	/**
+	 * @return Merges of two cells into one
+	 */
+	long getMerges();
+
+	/**
+	 * @return Zeroes placed by moves
+	 */
+	long getSpawns();
+
+	/**
+	 * @return Moves per second since the metrics were started or reset
+	 */
+	double getMovesPerSecond();
+
+	/**
+	 * @return Average merges per move
+	 */
+	double getMergesPerMove();
+
+	/**
+	 * @return Per stage count, mean, p50, p99 and max in microseconds, keyed
+	 *         stage.statistic
+	 */
+	Map<String, Double> getLatencies();
+
+	/**
+	 * @return Same text as the periodic dump
+	 */
+	String dump();
+
+	/**
+	 * Start counting again
+	 */
+	void reset();
+}
@@ -0,0 +1,99 @@
+package models;
+
+import utilities.Direction;
+
+/**
+ * SpawnPolicy that places every zero where it hurts the player most, to test
+ * how a MovePolicy holds up against the worst luck. Of the allowed cells the
+ * one with the fewest zeroes next to it is picked, a zero there is the
+ * hardest to merge away, then the one with the fewest empty cells next to
+ * it, which leaves the least room. Ties go to the first cell or line, so
+ * games are repeatable without a seed.
+ */
+public class AdversarialSpawnPolicy implements SpawnPolicy {
+
+	// Value a spawned cell gets, another one next to it can merge with it
+	private final int spawnValue;
+
+	/**
+	 * Constructor for AdversarialSpawnPolicy by the original rules
+	 */
+	public AdversarialSpawnPolicy() {
+		this(RuleSet.DEFAULT);
+	}
+
+	/**
+	 * Constructor for AdversarialSpawnPolicy
+	 * 
+	 * @param rules
+	 *            Rules of the board, for the value of a spawned cell
+	 */
+	public AdversarialSpawnPolicy(RuleSet rules) {
+		spawnValue = rules.getSpawnValue();
+	}
+
+	@Override
+	public int resetCell(int[] cells, int length) {
+		int worst = -1;
+		int worstScore = Integer.MAX_VALUE;
+		for (int cell = 0; cell < cells.length; cell++) {
+			if (cells[cell] != -1) {
+				continue;
+			}
+			int score = score(cells, length, cell);
+			if (score < worstScore) {
+				worst = cell;
+				worstScore = score;
+			}
+		}
+		return worst;
+	}
+
+	@Override
+	public int spawnLine(int[] cells, int length, Direction direction,
+			int[] lineChanges) {
+		int worst = -1;
+		int worstScore = Integer.MAX_VALUE;
+		for (int line = 0; line < length; line++) {
+			if (lineChanges[line] == 0) {
+				continue;
+			}
+			int score = score(cells, length,
+					Board.lineStart(length, direction, line));
+			if (score < worstScore) {
+				worst = line;
+				worstScore = score;
+			}
+		}
+		return worst;
+	}
+
+	/**
+	 * How good a zero on a cell would be for the player
+	 * 
+	 * @return Spawned values next to the cell times 8 plus the empty cells next
+	 *         to it
+	 */
+	private int score(int[] cells, int length, int cell) {
+		int row = cell / length;
+		int column = cell % length;
+		int score = 0;
+		if (column > 0) {
+			score += neighbour(cells[cell - 1]);
+		}
+		if (column < length - 1) {
+			score += neighbour(cells[cell + 1]);
+		}
+		if (row > 0) {
+			score += neighbour(cells[cell - length]);
+		}
+		if (row < length - 1) {
+			score += neighbour(cells[cell + length]);
+		}
+		return score;
+	}
+
+	private int neighbour(int value) {
+		return value == spawnValue ? 8 : value == -1 ? 1 : 0;
+	}
+}
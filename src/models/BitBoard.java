@@ -0,0 +1,532 @@
+package models;
+
+import utilities.Direction;
+
+/**
+ * Model class: BitBoard, a 4x4 TEN! board packed into a single long. Every
+ * cell takes four bits and stores its value + 1, so an empty cell (-1) is 0.
+ * Cell (row, column) lives at bit 16 * row + 4 * column.
+ * 
+ * Moves are applied with four lookups into the LineTables of the original
+ * rules, see RuleSet. Board moves a packed board with the tables of its own
+ * rules.
+ */
+public final class BitBoard {
+
+	/**
+	 * Length of one side of a packed board
+	 */
+	public static final int LENGTH = 4;
+
+	/**
+	 * Lowest value that can be packed, representing an empty cell
+	 */
+	public static final int MIN_VALUE = -1;
+
+	/**
+	 * Highest value that can be packed. One higher still fits in a cell, so a
+	 * merge of two packed values never overflows
+	 */
+	public static final int MAX_VALUE = 13;
+
+	// Tables of the original rules
+	private static final LineTables TABLES = LineTables.of(RuleSet.MERGE_LIMIT);
+
+	private BitBoard() {
+	}
+
+	/**
+	 * Whether packed boards can be played by a rule set over many moves. A
+	 * cell holds at most MAX_VALUE + 1, so the target has to stay below it:
+	 * a game stops at its target, before two of them could merge
+	 * 
+	 * @param rules
+	 *            Rules of a game
+	 * @return Whether the rules are for a 4x4 board with a target up to
+	 *         MAX_VALUE
+	 */
+	public static boolean isPackable(RuleSet rules) {
+		return rules.getLength() == LENGTH && rules.getTarget() <= MAX_VALUE;
+	}
+
+	/**
+	 * Whether a board can be packed into a long
+	 * 
+	 * @param board
+	 *            Int[][] of TEN! board
+	 * @return Whether the board is 4x4 with values between MIN_VALUE and
+	 *         MAX_VALUE
+	 */
+	public static boolean isPackable(int[][] board) {
+		if (board == null || board.length != LENGTH) {
+			return false;
+		}
+		for (int row = 0; row < LENGTH; row++) {
+			if (board[row] == null || board[row].length != LENGTH) {
+				return false;
+			}
+			for (int column = 0; column < LENGTH; column++) {
+				if (board[row][column] < MIN_VALUE
+						|| board[row][column] > MAX_VALUE) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Whether a flat board can be packed into a long
+	 * 
+	 * @param cells
+	 *            Values of TEN! board row by row
+	 * @return Whether the board is 4x4 with values between MIN_VALUE and
+	 *         MAX_VALUE
+	 */
+	public static boolean isPackable(int[] cells) {
+		if (cells == null || cells.length != LENGTH * LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < cells.length; i++) {
+			if (cells[i] < MIN_VALUE || cells[i] > MAX_VALUE) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Pack a 4x4 board into a long
+	 * 
+	 * @param board
+	 *            Int[][] of TEN! board, see isPackable
+	 * @return Packed board
+	 */
+	public static long pack(int[][] board) {
+		if (!isPackable(board)) {
+			throw new IllegalArgumentException("Board can not be packed");
+		}
+
+		long packed = 0;
+		for (int row = 0; row < LENGTH; row++) {
+			for (int column = 0; column < LENGTH; column++) {
+				packed |= (long) (board[row][column] + 1) << shift(row, column);
+			}
+		}
+		return packed;
+	}
+
+	/**
+	 * Pack a flat 4x4 board into a long
+	 * 
+	 * @param cells
+	 *            Values of TEN! board row by row, see isPackable
+	 * @return Packed board
+	 */
+	public static long pack(int[] cells) {
+		if (!isPackable(cells)) {
+			throw new IllegalArgumentException("Board can not be packed");
+		}
+
+		// Cell i lives at bit 4 * i
+		long packed = 0;
+		for (int i = 0; i < cells.length; i++) {
+			packed |= (long) (cells[i] + 1) << 4 * i;
+		}
+		return packed;
+	}
+
+	/**
+	 * Unpack a long into a new 4x4 board
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @return Int[][] of TEN! board
+	 */
+	public static int[][] unpack(long packed) {
+		int[][] board = new int[LENGTH][LENGTH];
+		unpack(packed, board);
+		return board;
+	}
+
+	/**
+	 * Unpack a long into an existing 4x4 board
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @param board
+	 *            Int[][] of TEN! board to overwrite
+	 */
+	public static void unpack(long packed, int[][] board) {
+		for (int row = 0; row < LENGTH; row++) {
+			for (int column = 0; column < LENGTH; column++) {
+				board[row][column] = get(packed, row, column);
+			}
+		}
+	}
+
+	/**
+	 * Unpack a long into an existing flat 4x4 board
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @param cells
+	 *            Values of TEN! board row by row to overwrite
+	 */
+	public static void unpack(long packed, int[] cells) {
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = (int) (packed >>> 4 * i & 0xF) - 1;
+		}
+	}
+
+	/**
+	 * @return Value of a single cell on a packed board
+	 */
+	public static int get(long packed, int row, int column) {
+		return (int) (packed >>> shift(row, column) & 0xF) - 1;
+	}
+
+	/**
+	 * @return Packed board with a single cell replaced
+	 */
+	public static long set(long packed, int row, int column, int value) {
+		int shift = shift(row, column);
+		return packed & ~(0xFL << shift) | (long) (value + 1) << shift;
+	}
+
+	/**
+	 * Score of a packed board, the same as Score.get() for the unpacked board
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @return highestValue * 10 + secondHighestValue with maximum of 100
+	 */
+	public static int score(long packed) {
+		return score(packed, RuleSet.DEFAULT);
+	}
+
+	/**
+	 * Score of a packed board by the rules of a variant, the same as
+	 * Score.get() for the unpacked board
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @param rules
+	 *            Rules of the game
+	 * @return Score by RuleSet.score
+	 */
+	public static int score(long packed, RuleSet rules) {
+		int highest = 0;
+		int secondHighest = 0;
+		for (int shift = 0; shift < 64; shift += 4) {
+			int value = (int) (packed >>> shift & 0xF) - 1;
+			if (highest < value) {
+				secondHighest = highest;
+				highest = value;
+			} else if (secondHighest < value) {
+				secondHighest = value;
+			}
+		}
+		return rules.score(highest, secondHighest);
+	}
+
+	/**
+	 * Move all lines on a packed board in the specified direction, without
+	 * spawning a zero
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @param direction
+	 *            Which way to move the values
+	 * @return Packed board after the move, equal to packed if nothing moved
+	 */
+	public static long move(long packed, Direction direction) {
+		return TABLES.move(packed, direction);
+	}
+
+	/**
+	 * Move all lines on a packed board by the merge limit of a variant,
+	 * without spawning a zero
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @param direction
+	 *            Which way to move the values
+	 * @param rules
+	 *            Rules packed boards can be played by, see
+	 *            isPackable(RuleSet)
+	 * @return Packed board after the move, equal to packed if nothing moved
+	 */
+	public static long move(long packed, Direction direction, RuleSet rules) {
+		return tables(rules).move(packed, direction);
+	}
+
+	/**
+	 * Directions that change a packed board, without moving it
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @return Bit Direction.ordinal() set for every direction that changes the
+	 *         board
+	 */
+	public static int legalMoves(long packed) {
+		return TABLES.legalMoves(packed);
+	}
+
+	/**
+	 * Directions that change a packed board by the merge limit of a variant,
+	 * without moving it
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @param rules
+	 *            Rules packed boards can be played by, see
+	 *            isPackable(RuleSet)
+	 * @return Bit Direction.ordinal() set for every direction that changes the
+	 *         board
+	 */
+	public static int legalMoves(long packed, RuleSet rules) {
+		return tables(rules).legalMoves(packed);
+	}
+
+	/**
+	 * Count how often every line changes during a move. Lines are numbered in
+	 * the order Board picks from when spawning, see spawn
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @param direction
+	 *            Which way to move the values
+	 * @return Amount of changes for line i in bits 8 * i to 8 * i + 7
+	 */
+	public static int changes(long packed, Direction direction) {
+		return TABLES.changes(packed, direction);
+	}
+
+	/**
+	 * Count how often every line changes during a move by the merge limit of
+	 * a variant, see changes
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @param direction
+	 *            Which way to move the values
+	 * @param rules
+	 *            Rules packed boards can be played by, see
+	 *            isPackable(RuleSet)
+	 * @return Amount of changes for line i in bits 8 * i to 8 * i + 7
+	 */
+	public static int changes(long packed, Direction direction, RuleSet rules) {
+		return tables(rules).changes(packed, direction);
+	}
+
+	/**
+	 * Values that merge during a move, at most two per line
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @param direction
+	 *            Which way to move the values
+	 * @return Value + 1 of every merged pair, before merging, one per nibble.
+	 *         Nibbles without a merge are 0
+	 */
+	public static int merges(long packed, Direction direction) {
+		// Two merges per line, from 16 bits per line to 8
+		long merges = TABLES.merges(packed, direction);
+		int result = 0;
+		for (int row = 0; row < LENGTH; row++) {
+			result |= (int) (merges >>> 16 * row & 0xFF) << 8 * row;
+		}
+		return result;
+	}
+
+	/**
+	 * Cells that hold the result of a merge after a move
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @param direction
+	 *            Which way to move the values
+	 * @return Packed board with a 1 in every merged cell and 0 elsewhere
+	 */
+	public static long merged(long packed, Direction direction) {
+		return TABLES.merged(packed, direction);
+	}
+
+	/**
+	 * Total amount of changes of a move, the sum of all lines in changes
+	 * 
+	 * @param changes
+	 *            Result of changes
+	 * @return Sum of the changes of every line
+	 */
+	public static int total(int changes) {
+		return (changes & 0xFF) + (changes >>> 8 & 0xFF)
+				+ (changes >>> 16 & 0xFF) + (changes >>> 24);
+	}
+
+	/**
+	 * Pick the line to spawn in, the same way Board picks from its list of
+	 * changed lines: every change of a line is one equally likely entry
+	 * 
+	 * @param changes
+	 *            Result of changes, at least one change
+	 * @param entry
+	 *            Random entry between 0 and total(changes)
+	 * @return Line number the entry belongs to
+	 */
+	public static int line(int changes, int entry) {
+		int line = 0;
+		while (entry >= (changes & 0xFF)) {
+			entry -= changes & 0xFF;
+			changes >>>= 8;
+			line++;
+		}
+		return line;
+	}
+
+	/**
+	 * Spawn a zero at the start of a line of a moved board
+	 * 
+	 * @param packed
+	 *            Packed board after move
+	 * @param direction
+	 *            Direction of the move
+	 * @param line
+	 *            Line number as used by changes
+	 * @return Packed board with the zero added
+	 */
+	public static long spawn(long packed, Direction direction, int line) {
+		return spawn(packed, direction, line, RuleSet.SPAWN_VALUE);
+	}
+
+	/**
+	 * Spawn a value at the start of a line of a moved board
+	 * 
+	 * @param packed
+	 *            Packed board after move
+	 * @param direction
+	 *            Direction of the move
+	 * @param line
+	 *            Line number as used by changes
+	 * @param value
+	 *            Value to spawn, see RuleSet.getSpawnValue
+	 * @return Packed board with the value added
+	 */
+	public static long spawn(long packed, Direction direction, int line,
+			int value) {
+		switch (direction) {
+		case EAST:
+			return set(packed, line, 0, value);
+		case WEST:
+			return set(packed, line, LENGTH - 1, value);
+		case SOUTH:
+			return set(packed, 0, LENGTH - 1 - line, value);
+		case NORTH:
+			return set(packed, LENGTH - 1, line, value);
+		default:
+			return packed;
+		}
+	}
+
+	/**
+	 * Swap rows and columns of a packed board, so columns can be handled as
+	 * rows
+	 * 
+	 * @param x
+	 *            Packed board
+	 * @return Packed board mirrored in its main diagonal
+	 */
+	public static long transpose(long x) {
+		long a1 = x & 0xF0F00F0FF0F00F0FL;
+		long a2 = x & 0x0000F0F00000F0F0L;
+		long a3 = x & 0x0F0F00000F0F0000L;
+		long a = a1 | a2 << 12 | a3 >>> 12;
+		long b1 = a & 0xFF00FF0000FF00FFL;
+		long b2 = a & 0x00FF00FF00000000L;
+		long b3 = a & 0x00000000FF00FF00L;
+		return b1 | b2 >>> 24 | b3 << 24;
+	}
+
+	/**
+	 * Mirror a packed board left to right
+	 * 
+	 * @param x
+	 *            Packed board
+	 * @return Packed board with the columns in reverse order
+	 */
+	public static long mirrorColumns(long x) {
+		x = (x & 0xF0F0F0F0F0F0F0F0L) >>> 4 | (x & 0x0F0F0F0F0F0F0F0FL) << 4;
+		return (x & 0xFF00FF00FF00FF00L) >>> 8 | (x & 0x00FF00FF00FF00FFL) << 8;
+	}
+
+	/**
+	 * Mirror a packed board top to bottom
+	 * 
+	 * @param x
+	 *            Packed board
+	 * @return Packed board with the rows in reverse order
+	 */
+	public static long mirrorRows(long x) {
+		x = x >>> 32 | x << 32;
+		return (x & 0xFFFF0000FFFF0000L) >>> 16 | (x & 0x0000FFFF0000FFFFL) << 16;
+	}
+
+	/**
+	 * Same board for all eight rotations and mirrorings of a packed board.
+	 * Boards that are each other's rotation or mirror image have the same
+	 * chances, moving and spawning work the same in every direction
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @return Lowest of the eight packed boards
+	 */
+	public static long canonical(long packed) {
+		long columns = mirrorColumns(packed);
+		long rows = mirrorRows(packed);
+		long both = mirrorRows(columns);
+		long lowest = Math.min(Math.min(packed, columns), Math.min(rows, both));
+		lowest = Math.min(lowest, Math.min(transpose(packed),
+				transpose(columns)));
+		return Math.min(lowest, Math.min(transpose(rows), transpose(both)));
+	}
+
+	/**
+	 * Sum of 2 ^ value over all values of a packed board. A merge of two
+	 * equal values keeps it the same and a spawned zero adds 1, so every move
+	 * raises it by exactly 1
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @return Potential of the board
+	 */
+	public static int potential(long packed) {
+		int potential = 0;
+		for (int shift = 0; shift < 64; shift += 4) {
+			int nibble = (int) (packed >>> shift & 0xF);
+			if (nibble != 0) {
+				potential += 1 << nibble - 1;
+			}
+		}
+		return potential;
+	}
+
+	/**
+	 * Tables that move a packed board by a rule set
+	 * 
+	 * @throws IllegalArgumentException
+	 *             When packed boards can not be played by the rules, see
+	 *             isPackable(RuleSet)
+	 */
+	private static LineTables tables(RuleSet rules) {
+		if (!isPackable(rules)) {
+			throw new IllegalArgumentException("Packed boards can not be "
+					+ "played by " + rules);
+		}
+		return rules.getTables();
+	}
+
+	private static int shift(int row, int column) {
+		return 16 * row + 4 * column;
+	}
+}
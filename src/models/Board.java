@@ -1,27 +1,124 @@
 package models;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Observable;
-import java.util.Observer;
 import java.util.Random;
-
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import metrics.Metrics;
+import metrics.Metrics.Stage;
+import utilities.BoardListener;
+import utilities.ChangeSet;
+import utilities.ChangeSet.Kind;
 import utilities.Direction;
+import utilities.ScoreListener;
 
 /**
  * Model class: Board, a matrix of numbers that can be manipulated according to
  * the rules of TEN! Doesn't know about the Controller or the View
  * 
+ * The matrix is stored row by row in a single array. A move walks every line
+ * in place in the requested direction, so the board never has to be rotated
+ * or mirrored.
+ * 
+ * Lines of boards at least PARALLEL_LENGTH long are moved in parallel on the
+ * common ForkJoinPool. Every task moves its own range of lines with its own
+ * MoveKernel and keeps its merges and changes to itself, they are added up
+ * in line order afterwards, so the result is the same as moving line by line.
+ * 
+ * Listeners are told which cells changed and how, only while there are
+ * listeners the changes are recorded.
+ * 
+ * With a History every changed board is kept packed for undo and redo.
+ * 
+ * A ZobristHash of the cells is updated for every cell a move, spawn or undo
+ * changes, so caches can look boards up without hashing all of their cells.
+ * The canonical hash, the same for all rotations and mirror images, is only
+ * kept up to date on request.
+ * 
+ * The directions that change the board are known without trying them. Every
+ * cell keeps the directions made legal by the pair with its right and with
+ * its lower neighbour, a direction is legal while any pair allows it. After
+ * a move only the pairs around the changed lines are looked at again.
+ * 
+ * The rules are read from a RuleSet: the merges a line allows, the value
+ * spawned and the target of the Score. A 4x4 board is moved packed with the
+ * tables of its rule set, built once per merge limit.
+ * 
+ * Where zeroes are placed is up to a SpawnPolicy, by default the random
+ * rules of TEN! Whatever the policy picks is checked, a zero never replaces
+ * a value.
+ * 
+ * With Metrics enabled, moves, the score update and telling the listeners
+ * are timed separately.
+ * 
  * @author <a href="mailto:mamoru@edwinmiltenburg.nl">Edwin Miltenburg</a>
  * 
  */
-public class Board extends Observable {
+public class Board {
 
-	private Random rand = new Random();
+	/**
+	 * Shortest board whose lines are moved in parallel
+	 */
+	public static final int PARALLEL_LENGTH = 256;
+
+	// Lines moved by one task of a parallel move
+	private static final int LINES_PER_TASK = 32;
+
+	// Bits of the legal moves
+	private static final int EAST = 1 << Direction.EAST.ordinal();
+	private static final int SOUTH = 1 << Direction.SOUTH.ordinal();
+	private static final int WEST = 1 << Direction.WEST.ordinal();
+	private static final int NORTH = 1 << Direction.NORTH.ordinal();
+
+	private final RuleSet rules;
+	private SpawnPolicy spawnPolicy;
 
-	private int[][] board;
+	// Tables of packed moves, null when the board is not 4x4
+	private final LineTables tables;
+
+	private int length;
+	private int[] cells;
 	private Score score;
 
+	private MoveKernel kernel;
+
+	// Amount of changes per line during the last move
+	private int[] lineChanges;
+
+	// State of every task of a parallel move, created on first use
+	private MoveKernel[] taskKernels;
+	private ChangeSet[] taskChanges;
+	private ZobristHash[] taskHashes;
+	private int[][] taskMerged;
+	private int[] taskMerges;
+
+	private List<BoardListener> listeners = new ArrayList<BoardListener>();
+
+	// Cells changed by the last change of the board, reused
+	private ChangeSet changes = new ChangeSet();
+
+	// Hash of the cells, updated per changed cell
+	private final ZobristHash hash;
+
+	// Directions that change the board, bit Direction.ordinal() each
+	private int legalMoves;
+
+	// Per cell the directions its pairs to the right and below allow, and per
+	// direction the amount of pairs allowing it. Not kept up to date by
+	// packed moves, then pairsCounted is false
+	private byte[] pairMoves;
+	private int[] legalPairs = new int[4];
+	private boolean pairsCounted = true;
+
+	// States for undo and redo, null when not kept
+	private History history;
+
+	// Cells of an undone or redone state before they replace the board
+	private int[] restored;
+
 	/**
 	 * Constructor for Board: Create board with custom dimensions
 	 * 
@@ -29,9 +126,70 @@ public class Board extends Observable {
 	 *            Length of one side of the board (at least 4)
 	 */
 	public Board(int size) {
-		size = Math.max(4, size);
-		board = new int[size][size];
-		score = new Score();
+		this(size, new RandomSpawnPolicy());
+	}
+
+	/**
+	 * Constructor for Board: Create board with custom dimensions and its own
+	 * source of randomness, so boards on different threads don't share one
+	 * 
+	 * @param size
+	 *            Length of one side of the board (at least 4)
+	 * @param rand
+	 *            Random used for placing zeroes
+	 */
+	public Board(int size, Random rand) {
+		this(size, new RandomSpawnPolicy(rand));
+	}
+
+	/**
+	 * Constructor for Board: Create board with custom dimensions that places
+	 * its zeroes where a SpawnPolicy wants them
+	 * 
+	 * @param size
+	 *            Length of one side of the board (at least 4)
+	 * @param spawnPolicy
+	 *            Policy for placing zeroes
+	 */
+	public Board(int size, SpawnPolicy spawnPolicy) {
+		this(RuleSet.DEFAULT.withLength(size), spawnPolicy);
+	}
+
+	/**
+	 * Constructor for Board: Create board for a variant of TEN!
+	 * 
+	 * @param rules
+	 *            Rules of the game, including the length of one side
+	 */
+	public Board(RuleSet rules) {
+		this(rules, new RandomSpawnPolicy());
+	}
+
+	/**
+	 * Constructor for Board: Create board for a variant of TEN! that places
+	 * its zeroes where a SpawnPolicy wants them
+	 * 
+	 * @param rules
+	 *            Rules of the game, including the length of one side
+	 * @param spawnPolicy
+	 *            Policy for placing zeroes
+	 */
+	public Board(RuleSet rules, SpawnPolicy spawnPolicy) {
+		this.rules = rules;
+		this.spawnPolicy = spawnPolicy;
+		tables = rules.getTables();
+		length = rules.getLength();
+		cells = new int[length * length];
+		Arrays.fill(cells, -1);
+		score = new Score(rules);
+
+		hash = new ZobristHash(length);
+		kernel = new MoveKernel(length, rules.getMergeLimit());
+		kernel.hash(hash);
+		lineChanges = new int[length];
+
+		// An empty board allows nothing
+		pairMoves = new byte[cells.length];
 	}
 
 	/**
@@ -40,7 +198,66 @@ public class Board extends Observable {
 	 * @return Length of one side of the board
 	 */
 	public int getLength() {
-		return board.length;
+		return length;
+	}
+
+	/**
+	 * @return Rules of the game
+	 */
+	public RuleSet getRules() {
+		return rules;
+	}
+
+	/**
+	 * @return Policy for placing zeroes
+	 */
+	public SpawnPolicy getSpawnPolicy() {
+		return spawnPolicy;
+	}
+
+	/**
+	 * Place the zeroes of the next reset and moves with another policy
+	 * 
+	 * @param spawnPolicy
+	 *            Policy for placing zeroes
+	 */
+	public void setSpawnPolicy(SpawnPolicy spawnPolicy) {
+		this.spawnPolicy = spawnPolicy;
+	}
+
+	/**
+	 * Zobrist hash of the cells, kept up to date with every change. Equal
+	 * boards of the same length have the same hash, an empty board hashes
+	 * to 0
+	 * 
+	 * @return 64-bit hash of the board
+	 */
+	public long getHash() {
+		return hash.get();
+	}
+
+	/**
+	 * Hash that is the same for the board and all of its rotations and
+	 * mirror images. Kept up to date while setCanonicalHashing is on,
+	 * otherwise computed from every cell
+	 * 
+	 * @return 64-bit hash of the board, the lowest of its eight symmetries
+	 */
+	public long getCanonicalHash() {
+		return hash.getCanonical(cells);
+	}
+
+	/**
+	 * Keep the canonical hash up to date with every change, which makes
+	 * hashing a changed cell eight times as expensive
+	 * 
+	 * @param canonical
+	 *            Whether to keep the canonical hash up to date
+	 */
+	public void setCanonicalHashing(boolean canonical) {
+		if (canonical != hash.isCanonical()) {
+			hash.setCanonical(canonical, cells);
+		}
 	}
 
 	/**
@@ -55,9 +272,13 @@ public class Board extends Observable {
 	/**
 	 * Get values on the board
 	 * 
-	 * @return Int[][] of values on TEN! board
+	 * @return Int[][] copy of values on TEN! board
 	 */
 	public int[][] get() {
+		int[][] board = new int[length][length];
+		for (int row = 0; row < length; row++) {
+			System.arraycopy(cells, row * length, board[row], 0, length);
+		}
 		return board;
 	}
 
@@ -65,37 +286,75 @@ public class Board extends Observable {
 	 * Fill board with predetermined values
 	 * 
 	 * @param board
-	 *            Int[][] for TEN! board, needs to be same size
+	 *            Int[][] for TEN! board, needs to be same size and contain no
+	 *            values below -1
 	 */
 	public void set(int[][] board) {
-		if (board != null && board.length == this.board.length) {
-			this.board = board;
+		if (board == null || board.length != length) {
+			return;
+		}
+		for (int row = 0; row < length; row++) {
+			if (board[row] == null || board[row].length != length) {
+				return;
+			}
+			for (int column = 0; column < length; column++) {
+				if (board[row][column] < -1) {
+					return;
+				}
+			}
+		}
 
-			handleChange();
+		boolean recording = startChanges();
+		for (int row = 0; row < length; row++) {
+			if (recording) {
+				for (int column = 0; column < length; column++) {
+					int cell = row * length + column;
+					if (cells[cell] != board[row][column]) {
+						changes.add(cell, cells[cell], board[row][column],
+								Kind.SET);
+					}
+				}
+			}
+			System.arraycopy(board[row], 0, cells, row * length, length);
 		}
+		hash.compute(cells);
+		score.count(cells);
+		countLegalMoves();
+
+		handleChange();
 	}
 
 	/**
 	 * Fills the the board with -1 and adds 2 zeroes at random location
 	 */
 	public void reset() {
+		boolean recording = startChanges();
+
 		// Fill the board with -1
-		for (int row = 0; row < board.length; row++) {
-			for (int column = 0; column < board[row].length; column++) {
-				board[row][column] = -1;
+		for (int i = 0; i < cells.length; i++) {
+			if (recording && cells[i] != -1) {
+				changes.add(i, cells[i], -1, Kind.SET);
 			}
+			cells[i] = -1;
 		}
-
-		// Generate 2 zeroes at random 'empty' locations
-		int zeroes = 0;
-		while (zeroes < 2) {
-			int column = rand.nextInt(board.length);
-			int row = rand.nextInt(board.length);
-			if (board[row][column] == -1) {
-				board[row][column] = 0;
-				zeroes++;
+		hash.clear(hash.isCanonical());
+		score.clear();
+
+		// Generate 2 zeroes at 'empty' locations
+		for (int zeroes = 0; zeroes < 2; zeroes++) {
+			int cell = spawnPolicy.resetCell(cells, length);
+			if (cell < 0 || cell >= cells.length || cells[cell] != -1) {
+				throw new IllegalStateException("Spawn policy picked cell "
+						+ cell + ", which is not empty");
 			}
+			cells[cell] = rules.getSpawnValue();
+			if (recording) {
+				changes.add(cell, -1, cells[cell], Kind.SPAWN);
+			}
+			hash.update(cell, -1, cells[cell]);
+			score.spawn();
 		}
+		countLegalMoves();
 
 		handleChange();
 	}
@@ -108,29 +367,27 @@ public class Board extends Observable {
 	 * @return Whether the board has been changed
 	 */
 	public boolean move(Direction direction) {
-		boolean hasChanged = false;
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		boolean hasChanged;
+		if (startChanges()) {
+			changes.setDirection(direction);
+			kernel.record(changes);
+		} else {
+			kernel.record(null);
+		}
 
-		switch (direction) {
-		case EAST:
-			hasChanged = move();
-			break;
-		case WEST:
-			mirror();
-			hasChanged = move();
-			mirror();
-			break;
-		case SOUTH:
-			rotateCounterClockwise();
-			hasChanged = move();
-			rotateClockwise();
-			break;
-		case NORTH:
-			rotateClockwise();
-			hasChanged = move();
-			rotateCounterClockwise();
-			break;
-		default:
-			break;
+		// A 4x4 board is moved faster packed into a long
+		if (tables != null && BitBoard.isPackable(cells)) {
+			hasChanged = movePacked(direction);
+		} else {
+			hasChanged = moveLines(direction);
+		}
+
+		if (Metrics.ENABLED) {
+			Metrics.record(Stage.MOVE, start);
+			if (hasChanged) {
+				Metrics.moved();
+			}
 		}
 
 		if (hasChanged) {
@@ -141,123 +398,593 @@ public class Board extends Observable {
 	}
 
 	/**
-	 * Move all lines on the board in a single forward direction and spawn a
-	 * zero at the start of a random 'changed' line
+	 * Move all lines on the board towards the specified direction and spawn a
+	 * zero at the start of a 'changed' line
 	 * 
+	 * @param direction
+	 *            Which way to move the values on the TEN! board
 	 * @return Whether the board has been changed
 	 */
-	private boolean move() {
-		// Whether the board has been changed
+	private boolean moveLines(Direction direction) {
+		if (length >= PARALLEL_LENGTH
+				&& ForkJoinPool.getCommonPoolParallelism() > 1) {
+			moveParallel(direction);
+		} else {
+			int stride = lineStride(direction);
+			for (int line = 0; line < length; line++) {
+				lineChanges[line] = kernel.moveLine(cells,
+						lineStart(direction, line), stride);
+
+				for (int merge = 0; merge < kernel.getMerges(); merge++) {
+					score.merge(kernel.getMerged(merge));
+				}
+			}
+		}
+
 		boolean hasChanged = false;
+		for (int line = 0; line < length && !hasChanged; line++) {
+			hasChanged = lineChanges[line] != 0;
+		}
+
+		if (!hasChanged) {
+			return false;
+		}
 
-		// Which lines have changed
-		List<Integer> changedLines = new ArrayList<Integer>();
+		// Generate 1 zero at start of a 'changed' line
+		spawnLine(direction);
+		updateLegalMoves(direction);
 
-		// For each line on the board
-		for (int line = 0; line < board.length; line++) {
+		return true;
+	}
+
+	/**
+	 * Move all lines on the board towards the specified direction, a range of
+	 * lines per task, without spawning a zero
+	 * 
+	 * @param direction
+	 *            Which way to move the values on the TEN! board
+	 */
+	private void moveParallel(Direction direction) {
+		int tasks = (length + LINES_PER_TASK - 1) / LINES_PER_TASK;
+		if (taskKernels == null) {
+			taskKernels = new MoveKernel[tasks];
+			taskChanges = new ChangeSet[tasks];
+			taskHashes = new ZobristHash[tasks];
+			taskMerged = new int[tasks][];
+			taskMerges = new int[tasks];
+			for (int task = 0; task < tasks; task++) {
+				taskKernels[task] = new MoveKernel(length,
+						rules.getMergeLimit());
+				taskChanges[task] = new ChangeSet();
+				taskHashes[task] = new ZobristHash(length);
+				taskKernels[task].hash(taskHashes[task]);
+				taskMerged[task] = new int[LINES_PER_TASK
+						* rules.getMergeLimit()];
+			}
+		}
 
-			// Amount of values merged in this line, max. 2
-			int merges = 0;
+		boolean recording = !listeners.isEmpty();
+		ForkJoinPool.commonPool().invoke(
+				new MoveTask(direction, recording, 0, tasks));
 
-			// Enough rounds so that first digit can reach last
-			for (int r = 0; r <= board[line].length - 2; r++) {
-				// For each pair on the line
-				for (int p = board[line].length - 2; p >= r; p--) {
+		// Merges and changes in line order, like a move line by line
+		for (int task = 0; task < tasks; task++) {
+			for (int merge = 0; merge < taskMerges[task]; merge++) {
+				score.merge(taskMerged[task][merge]);
+			}
+			hash.add(taskHashes[task]);
+			if (recording) {
+				changes.addAll(taskChanges[task]);
+			}
+		}
+	}
+
+	/**
+	 * Move the lines of a single task of a parallel move
+	 * 
+	 * @param task
+	 *            Number of the task, moves LINES_PER_TASK lines from task *
+	 *            LINES_PER_TASK
+	 */
+	private void moveTask(Direction direction, boolean recording, int task) {
+		MoveKernel taskKernel = taskKernels[task];
+		taskChanges[task].clear(length);
+		taskKernel.record(recording ? taskChanges[task] : null);
+
+		// Only the changes, added to the hash of the board afterwards
+		taskHashes[task].clear(hash.isCanonical());
+
+		int stride = lineStride(direction);
+		int merges = 0;
+		int last = Math.min(length, (task + 1) * LINES_PER_TASK);
+		for (int line = task * LINES_PER_TASK; line < last; line++) {
+			lineChanges[line] = taskKernel.moveLine(cells,
+					lineStart(direction, line), stride);
+
+			for (int merge = 0; merge < taskKernel.getMerges(); merge++) {
+				taskMerged[task][merges++] = taskKernel.getMerged(merge);
+			}
+		}
+		taskMerges[task] = merges;
+	}
 
-					// Logic for merging/moving a pair according to rules of TEN
-					if (board[line][p] != -1) {
-						if (board[line][p + 1] == -1) {
-							board[line][p + 1] = board[line][p];
-							board[line][p] = -1;
+	/**
+	 * Move a 4x4 board using BitBoard and spawn a zero at the start of a
+	 * 'changed' line, like moveLines()
+	 * 
+	 * @param direction
+	 *            Which way to move the values on the TEN! board
+	 * @return Whether the board has been changed
+	 */
+	private boolean movePacked(Direction direction) {
+		long packed = BitBoard.pack(cells);
+		long moved = tables.move(packed, direction);
 
-							// Line changed but no merged pair!
-							changedLines.add(line);
+		if (moved == packed) {
+			return false;
+		}
 
-						} else if (board[line][p + 1] == board[line][p]
-								&& merges < 2) {
-							board[line][p + 1] = board[line][p] + 1;
-							board[line][p] = -1;
+		if (!listeners.isEmpty()) {
+			recordPacked(packed, moved, tables.merged(packed, direction));
+		}
+		hash.updatePacked(packed, moved);
 
-							// Merged pair, hence line changed
-							merges++;
-							changedLines.add(line);
-						}
-						// else: nothing changes
-					}
-					// else: nothing changes
-				}
+		// Every nibble holds a merged value + 1, 0 for no merge
+		long merges = tables.merges(packed, direction);
+		while (merges != 0) {
+			if ((merges & 0xF) != 0) {
+				score.merge((int) (merges & 0xF) - 1);
 			}
+			merges >>>= 4;
+		}
+		BitBoard.unpack(moved, cells);
 
+		// Changes of every line, in the same order as in moveLines()
+		int entries = tables.changes(packed, direction);
+		for (int line = 0; line < length; line++) {
+			lineChanges[line] = entries >>> 8 * line & 0xFF;
 		}
+		spawnLine(direction);
+
+		countLegalMoves();
+
+		return true;
+	}
 
-		if (!changedLines.isEmpty()) {
-			hasChanged = true;
+	/**
+	 * Directions that change the board, known without moving it. Updated
+	 * after every change of the board
+	 * 
+	 * @return Bit Direction.ordinal() set for every direction that changes the
+	 *         board, 0 when the game is over
+	 */
+	public int getLegalMoves() {
+		return legalMoves;
+	}
 
-			// Generate 1 zero at start of random 'changed' line
-			int line = changedLines.get(rand.nextInt(changedLines.size()));
-			board[line][0] = 0;
+	/**
+	 * @param direction
+	 *            Which way to move the values on the TEN! board
+	 * @return Whether a move in the direction changes the board
+	 */
+	public boolean isLegal(Direction direction) {
+		return (legalMoves & 1 << direction.ordinal()) != 0;
+	}
+
+	/**
+	 * Find the legal moves of the whole board in one pass
+	 */
+	private void countLegalMoves() {
+		if (tables != null && BitBoard.isPackable(cells)) {
+			legalMoves = tables.legalMoves(BitBoard.pack(cells));
+			pairsCounted = false;
+			return;
 		}
 
-		return hasChanged;
+		Arrays.fill(pairMoves, (byte) 0);
+		Arrays.fill(legalPairs, 0);
+		for (int cell = 0; cell < cells.length; cell++) {
+			updatePairs(cell);
+		}
+		pairsCounted = true;
+		legalMoves = pairsToMoves();
+	}
+
+	/**
+	 * Find the legal moves after a move of the lines, looking only at the
+	 * pairs of the changed lines and of the lines before them
+	 * 
+	 * @param direction
+	 *            Which way the values moved
+	 */
+	private void updateLegalMoves(Direction direction) {
+		if (!pairsCounted) {
+			countLegalMoves();
+			return;
+		}
+
+		int stride = lineStride(direction);
+		boolean rows = stride == 1 || stride == -1;
+
+		// Distance to the neighbouring line above or to the left
+		int before = rows ? length : 1;
+
+		for (int line = 0; line < length; line++) {
+			if (lineChanges[line] == 0) {
+				continue;
+			}
+			int start = lineStart(direction, line);
+			boolean first = (rows ? start / length : start % length) == 0;
+			for (int i = 0, cell = start; i < length; i++, cell += stride) {
+				updatePairs(cell);
+				if (!first) {
+					updatePairs(cell - before);
+				}
+			}
+		}
+		legalMoves = pairsToMoves();
 	}
 
 	/**
-	 * Mirror the board horizontally by reversing numbers on all lines
+	 * Look again at the pairs of a cell with its right and lower neighbour
+	 * 
+	 * @param cell
+	 *            Index in cells
 	 */
-	private void mirror() {
-		for (int line = 0; line < board.length; line++) {
-			for (int i = 0; i < board[line].length / 2; i++) {
-				int temp = board[line][i];
-				board[line][i] = board[line][board[line].length - 1 - i];
-				board[line][board[line].length - 1 - i] = temp;
+	private void updatePairs(int cell) {
+		int value = cells[cell];
+		int moves = 0;
+		if (cell % length != length - 1) {
+			moves |= pairMoves(value, cells[cell + 1], EAST, WEST);
+		}
+		if (cell + length < cells.length) {
+			moves |= pairMoves(value, cells[cell + length], SOUTH, NORTH);
+		}
+
+		int changed = moves ^ pairMoves[cell];
+		if (changed == 0) {
+			return;
+		}
+		for (int bit = 0; bit < legalPairs.length; bit++) {
+			if ((changed & 1 << bit) != 0) {
+				legalPairs[bit] += (moves & 1 << bit) != 0 ? 1 : -1;
 			}
 		}
+		pairMoves[cell] = (byte) moves;
 	}
 
 	/**
-	 * Rotate the board clockwise
+	 * Directions allowed by two neighbouring cells: a value moves into an
+	 * empty cell and equal values merge
+	 * 
+	 * @param first
+	 *            Value of the left or upper cell
+	 * @param second
+	 *            Value of the right or lower cell
+	 * @param forward
+	 *            Bit of the direction from first to second
+	 * @param backward
+	 *            Bit of the direction from second to first
+	 * @return Bits of the allowed directions
 	 */
-	private void rotateClockwise() {
-		int n = board.length;
-		for (int row = 0; row < n / 2; row++) {
-			for (int column = row; column < n - row - 1; column++) {
-				int temp = board[row][column];
-				board[row][column] = board[n - column - 1][row];
-				board[n - column - 1][row] = board[n - row - 1][n - column - 1];
-				board[n - row - 1][n - column - 1] = board[column][n - row - 1];
-				board[column][n - row - 1] = temp;
+	private static int pairMoves(int first, int second, int forward,
+			int backward) {
+		if (first == -1) {
+			return second == -1 ? 0 : backward;
+		}
+		if (second == -1) {
+			return forward;
+		}
+		return first == second ? forward | backward : 0;
+	}
+
+	private int pairsToMoves() {
+		int moves = 0;
+		for (int bit = 0; bit < legalPairs.length; bit++) {
+			if (legalPairs[bit] > 0) {
+				moves |= 1 << bit;
 			}
 		}
+		return moves;
+	}
+
+	/**
+	 * Spawn a zero at the start of the line the SpawnPolicy picks from the
+	 * lines changed by a move
+	 * 
+	 * @param direction
+	 *            Direction of the move
+	 */
+	private void spawnLine(Direction direction) {
+		int line = spawnPolicy.spawnLine(cells, length, direction, lineChanges);
+		if (line < 0 || line >= length || lineChanges[line] == 0) {
+			throw new IllegalStateException("Spawn policy picked line " + line
+					+ ", which did not change");
+		}
+		spawn(lineStart(direction, line));
 	}
 
 	/**
-	 * Rotate the board counterclockwise
+	 * Count and record a zero, or the spawn value of the rules, placed on an
+	 * empty cell
+	 * 
+	 * @param cell
+	 *            Index in cells
 	 */
-	private void rotateCounterClockwise() {
-		int n = board.length;
-		for (int row = 0; row < n / 2; row++) {
-			for (int column = row; column < n - row - 1; column++) {
-				int temp = board[row][column];
-				board[row][column] = board[column][n - row - 1];
-				board[column][n - row - 1] = board[n - row - 1][n - column - 1];
-				board[n - row - 1][n - column - 1] = board[n - column - 1][row];
-				board[n - column - 1][row] = temp;
+	private void spawn(int cell) {
+		cells[cell] = rules.getSpawnValue();
+		hash.update(cell, -1, cells[cell]);
+		score.spawn();
+		if (!listeners.isEmpty()) {
+			changes.add(cell, -1, cells[cell], Kind.SPAWN);
+		}
+		if (Metrics.ENABLED) {
+			Metrics.spawned();
+		}
+	}
+
+	/**
+	 * Record the cells changed by a move of a packed board, without the spawn
+	 * 
+	 * @param packed
+	 *            Packed board before the move
+	 * @param moved
+	 *            Packed board after the move
+	 * @param merged
+	 *            Packed board with a 1 in every merged cell
+	 */
+	private void recordPacked(long packed, long moved, long merged) {
+		for (int cell = 0; cell < cells.length; cell++) {
+			int oldValue = (int) (packed >>> 4 * cell & 0xF) - 1;
+			int newValue = (int) (moved >>> 4 * cell & 0xF) - 1;
+			boolean isMerged = (merged >>> 4 * cell & 0xF) != 0;
+			if (oldValue != newValue || isMerged) {
+				changes.add(cell, oldValue, newValue, isMerged ? Kind.MERGE
+						: Kind.SLIDE);
 			}
 		}
 	}
 
 	/**
-	 * On change, update score and notify observers of board values and score
+	 * Index of the first cell of a line, the cell furthest away from the side
+	 * the values move to. Lines are numbered from the side that would be on
+	 * top after turning the board so that the direction points east
+	 * 
+	 * @param length
+	 *            Length of one side of the board
+	 * @param direction
+	 *            Which way the values move
+	 * @param line
+	 *            Number of the line
+	 * @return Index in cells
+	 */
+	public static int lineStart(int length, Direction direction, int line) {
+		switch (direction) {
+		case EAST:
+			return line * length;
+		case WEST:
+			return line * length + length - 1;
+		case SOUTH:
+			return length - 1 - line;
+		case NORTH:
+			return (length - 1) * length + line;
+		default:
+			throw new IllegalArgumentException(direction.toString());
+		}
+	}
+
+	private int lineStart(Direction direction, int line) {
+		return lineStart(length, direction, line);
+	}
+
+	/**
+	 * Distance between the indices of two cells next to each other on a line,
+	 * in the direction the values move
+	 */
+	private int lineStride(Direction direction) {
+		switch (direction) {
+		case EAST:
+			return 1;
+		case WEST:
+			return -1;
+		case SOUTH:
+			return length;
+		case NORTH:
+			return -length;
+		default:
+			throw new IllegalArgumentException(direction.toString());
+		}
+	}
+
+	/**
+	 * Start recording the cells changed by the next change of the board
+	 * 
+	 * @return Whether changes need to be recorded, only when somebody is
+	 *         listening
+	 */
+	private boolean startChanges() {
+		changes.clear(length);
+		return !listeners.isEmpty();
+	}
+
+	/**
+	 * Keep the states of the board for undo and redo, starting with the
+	 * current one
+	 * 
+	 * @param bytes
+	 *            Memory to use for states, 0 to stop keeping them
+	 */
+	public void setHistory(long bytes) {
+		if (bytes == 0) {
+			history = null;
+			restored = null;
+			return;
+		}
+		history = new History(length, bytes);
+		restored = new int[cells.length];
+		history.record(cells);
+	}
+
+	/**
+	 * Forget the kept states, starting again with the current one
+	 */
+	public void clearHistory() {
+		if (history != null) {
+			history.clear();
+			history.record(cells);
+		}
+	}
+
+	/**
+	 * @return Whether a change can be undone
+	 */
+	public boolean canUndo() {
+		return history != null && history.canUndo();
+	}
+
+	/**
+	 * @return Whether an undone change can be redone
+	 */
+	public boolean canRedo() {
+		return history != null && history.canRedo();
+	}
+
+	/**
+	 * Go back to the board before the last change
+	 * 
+	 * @return Whether the board has been changed
+	 */
+	public boolean undo() {
+		if (history == null || !history.undo(restored)) {
+			return false;
+		}
+		restore();
+		return true;
+	}
+
+	/**
+	 * Go forward to the board of the last undone change
+	 * 
+	 * @return Whether the board has been changed
+	 */
+	public boolean redo() {
+		if (history == null || !history.redo(restored)) {
+			return false;
+		}
+		restore();
+		return true;
+	}
+
+	/**
+	 * Replace the cells with the restored ones, without recording the state
+	 */
+	private void restore() {
+		boolean recording = startChanges();
+		for (int cell = 0; cell < cells.length; cell++) {
+			if (cells[cell] != restored[cell]) {
+				if (recording) {
+					changes.add(cell, cells[cell], restored[cell], Kind.SET);
+				}
+				hash.update(cell, cells[cell], restored[cell]);
+			}
+		}
+		System.arraycopy(restored, 0, cells, 0, cells.length);
+		score.count(cells);
+		countLegalMoves();
+
+		notifyChange();
+	}
+
+	/**
+	 * On change, keep the new state and notify
 	 */
 	private void handleChange() {
-		score.update(board);
+		if (history != null) {
+			history.record(cells);
+		}
+		notifyChange();
+	}
 
-		this.setChanged();
-		this.notifyObservers(board);
+	/**
+	 * Update score from the counted values and notify listeners of changed
+	 * cells and score
+	 */
+	private void notifyChange() {
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		score.update();
+		if (Metrics.ENABLED) {
+			start = Metrics.record(Stage.SCORE, start);
+		}
+
+		for (int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).boardChanged(changes);
+		}
+		if (Metrics.ENABLED) {
+			Metrics.record(Stage.NOTIFY, start);
+		}
 	}
 
-	public void addScoreObserver(Object observer) {
-		score.addObserver((Observer) observer);
+	/**
+	 * @param listener
+	 *            Listener to inform of every change of the cells
+	 */
+	public void addListener(BoardListener listener) {
+		listeners.add(listener);
+	}
 
+	/**
+	 * @param listener
+	 *            Listener to stop informing
+	 */
+	public void removeListener(BoardListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @param listener
+	 *            Listener to inform of every update of the score
+	 */
+	public void addScoreListener(ScoreListener listener) {
+		score.addListener(listener);
+	}
+
+	/**
+	 * @param listener
+	 *            Listener to stop informing
+	 */
+	public void removeScoreListener(ScoreListener listener) {
+		score.removeListener(listener);
+	}
+
+	/**
+	 * Task of a parallel move, split in half until it moves the lines of a
+	 * single task
+	 */
+	@SuppressWarnings("serial")
+	private class MoveTask extends RecursiveAction {
+
+		private final Direction direction;
+		private final boolean recording;
+		private final int from;
+		private final int to;
+
+		MoveTask(Direction direction, boolean recording, int from, int to) {
+			this.direction = direction;
+			this.recording = recording;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				moveTask(direction, recording, from);
+				return;
+			}
+
+			int middle = from + (to - from) / 2;
+			invokeAll(new MoveTask(direction, recording, from, middle),
+					new MoveTask(direction, recording, middle, to));
+		}
 	}
 }
@@ -0,0 +1,183 @@
+package models;
+
+/**
+ * Model class: History of board states for undo and redo. The states are
+ * kept in a ring buffer allocated once for a given amount of bytes, so the
+ * memory used is known up front and recording a state allocates nothing.
+ * When the buffer is full the oldest state is overwritten.
+ * 
+ * A state is packed four bits per cell (value + 1), sixteen cells per long.
+ * Values above 14 don't fit, a board with such a value clears the history.
+ */
+public class History {
+
+	// Cells per long, four bits each
+	private static final int CELLS_PER_LONG = 16;
+
+	private final int cellCount;
+	private final int words;
+	private final int capacity;
+
+	// State i of the ring starts at word i * words
+	private final long[] states;
+
+	// Slot of the oldest state, amount of states and the current one
+	private int first;
+	private int count;
+	private int current;
+
+	/**
+	 * Constructor for History
+	 * 
+	 * @param length
+	 *            Length of one side of the board
+	 * @param bytes
+	 *            Memory to use for states, at least two states
+	 */
+	public History(int length, long bytes) {
+		cellCount = length * length;
+		words = (cellCount + CELLS_PER_LONG - 1) / CELLS_PER_LONG;
+		long fits = bytes / bytesPerState(length);
+		if (fits < 2) {
+			throw new IllegalArgumentException(bytes
+					+ " bytes hold less than two states of a " + length + "x"
+					+ length + " board");
+		}
+		capacity = (int) Math.min(fits, Integer.MAX_VALUE / words);
+		states = new long[capacity * words];
+	}
+
+	/**
+	 * @param length
+	 *            Length of one side of the board
+	 * @return Memory one state of the board takes
+	 */
+	public static long bytesPerState(int length) {
+		long cells = (long) length * length;
+		return 8L * ((cells + CELLS_PER_LONG - 1) / CELLS_PER_LONG);
+	}
+
+	/**
+	 * @return Amount of states the history can hold
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return Whether there is a state before the current one
+	 */
+	public boolean canUndo() {
+		return current > 0;
+	}
+
+	/**
+	 * @return Whether there is a state after the current one
+	 */
+	public boolean canRedo() {
+		return current < count - 1;
+	}
+
+	/**
+	 * Forget every state
+	 */
+	public void clear() {
+		first = 0;
+		count = 0;
+		current = 0;
+	}
+
+	/**
+	 * Add a state after the current one, dropping the states that could be
+	 * redone
+	 * 
+	 * @param cells
+	 *            Cells of the board, row by row
+	 * @return False if a value did not fit and the history was cleared
+	 */
+	public boolean record(int[] cells) {
+		if (count > 0) {
+			count = current + 1;
+		}
+		if (count == capacity) {
+			first = (first + 1) % capacity;
+			count--;
+		}
+
+		if (!pack(cells, slot(count))) {
+			clear();
+			return false;
+		}
+		current = count;
+		count++;
+		return true;
+	}
+
+	/**
+	 * Go back one state
+	 * 
+	 * @param cells
+	 *            Cells to fill with the previous state
+	 * @return False if there is no previous state
+	 */
+	public boolean undo(int[] cells) {
+		if (!canUndo()) {
+			return false;
+		}
+		current--;
+		unpack(slot(current), cells);
+		return true;
+	}
+
+	/**
+	 * Go forward one state
+	 * 
+	 * @param cells
+	 *            Cells to fill with the next state
+	 * @return False if there is no next state
+	 */
+	public boolean redo(int[] cells) {
+		if (!canRedo()) {
+			return false;
+		}
+		current++;
+		unpack(slot(current), cells);
+		return true;
+	}
+
+	private int slot(int index) {
+		return (first + index) % capacity;
+	}
+
+	private boolean pack(int[] cells, int slot) {
+		int word = slot * words;
+		long packed = 0;
+		for (int cell = 0; cell < cellCount; cell++) {
+			int nibble = cells[cell] + 1;
+			if (nibble > 15) {
+				return false;
+			}
+			packed |= (long) nibble << 4 * (cell % CELLS_PER_LONG);
+			if (cell % CELLS_PER_LONG == CELLS_PER_LONG - 1) {
+				states[word++] = packed;
+				packed = 0;
+			}
+		}
+		if (cellCount % CELLS_PER_LONG != 0) {
+			states[word] = packed;
+		}
+		return true;
+	}
+
+	private void unpack(int slot, int[] cells) {
+		int word = slot * words;
+		long packed = 0;
+		for (int cell = 0; cell < cellCount; cell++) {
+			if (cell % CELLS_PER_LONG == 0) {
+				packed = states[word++];
+			}
+			int nibble = (int) (packed >>> 4 * (cell % CELLS_PER_LONG)) & 0xF;
+			cells[cell] = nibble - 1;
+		}
+	}
+}
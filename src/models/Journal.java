@@ -0,0 +1,258 @@
+package models;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import utilities.Direction;
+import utilities.TextFormat;
+
+/**
+ * Model class: Journal, the record of a single game. A game starts either
+ * with a reset or from a given board, with its Random in a known state (the
+ * seed of a SeededRandom). After that only the moves that changed the board
+ * are needed to play the game again exactly, see Replayer.
+ * 
+ * Moves are appended only, four per byte: two bits per direction.
+ */
+public class Journal {
+
+	/**
+	 * File name extension of stored journals
+	 */
+	public static final String EXTENSION = ".tenj";
+
+	/**
+	 * Version written in the header of a stored journal
+	 */
+	public static final int VERSION = 1;
+
+	private static final byte[] MAGIC = { 'T', 'E', 'N', 'J' };
+
+	// Moves per long, two bits each
+	private static final int MOVES_PER_LONG = 32;
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private final int length;
+	private final long seed;
+	private final int[][] start;
+
+	private long[] moves = new long[16];
+	private int size;
+
+	/**
+	 * Constructor for Journal
+	 * 
+	 * @param length
+	 *            Length of one side of the board
+	 * @param seed
+	 *            State of the SeededRandom of the board when the game starts
+	 * @param start
+	 *            Board the game starts from, null when the game starts with a
+	 *            reset after seeding
+	 */
+	public Journal(int length, long seed, int[][] start) {
+		this.length = length;
+		this.seed = seed;
+		this.start = start == null ? null : copy(start);
+	}
+
+	/**
+	 * Record a move that changed the board
+	 * 
+	 * @param direction
+	 *            Direction of the move
+	 */
+	public void add(Direction direction) {
+		if (size == moves.length * MOVES_PER_LONG) {
+			moves = Arrays.copyOf(moves, moves.length * 2);
+		}
+		moves[size / MOVES_PER_LONG] |= (long) direction.ordinal() << 2 * (size
+				% MOVES_PER_LONG);
+		size++;
+	}
+
+	/**
+	 * @param move
+	 *            Number of the move, counting from 0
+	 * @return Direction of the move
+	 */
+	public Direction get(int move) {
+		if (move < 0 || move >= size) {
+			throw new IndexOutOfBoundsException("Move " + move + " of "
+					+ size);
+		}
+		long word = moves[move / MOVES_PER_LONG];
+		return DIRECTIONS[(int) (word >>> 2 * (move % MOVES_PER_LONG)) & 3];
+	}
+
+	/**
+	 * @return Amount of moves
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return Length of one side of the board
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return State of the SeededRandom when the game starts
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return Copy of the board the game starts from, null when it starts with
+	 *         a reset
+	 */
+	public int[][] getStart() {
+		return start == null ? null : copy(start);
+	}
+
+	/**
+	 * Store the journal: a header of the magic bytes "TENJ", a version byte,
+	 * the length, the seed and whether a start board follows, then the start
+	 * board one byte per cell (value + 1), the amount of moves and the packed
+	 * moves
+	 * 
+	 * @param path
+	 *            File to write, replaced
+	 * @throws IOException
+	 *             If the file can not be written or the start board has values
+	 *             above 254
+	 */
+	public void write(Path path) throws IOException {
+		int cells = start == null ? 0 : length * length;
+		int words = (size + MOVES_PER_LONG - 1) / MOVES_PER_LONG;
+		ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + 1 + 4 + 8 + 1
+				+ cells + 4 + 8 * words);
+
+		buffer.put(MAGIC).put((byte) VERSION).putInt(length).putLong(seed);
+		buffer.put((byte) (start == null ? 0 : 1));
+		if (start != null) {
+			for (int[] row : start) {
+				for (int value : row) {
+					if (value < -1 || value > 254) {
+						throw new IOException("Value " + value
+								+ " can not be stored");
+					}
+					buffer.put((byte) (value + 1));
+				}
+			}
+		}
+		buffer.putInt(size);
+		for (int word = 0; word < words; word++) {
+			buffer.putLong(moves[word]);
+		}
+		buffer.flip();
+
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Load a journal stored by write
+	 * 
+	 * @param path
+	 *            File to read
+	 * @return Journal
+	 * @throws IOException
+	 *             If the file can not be read or is no journal
+	 */
+	public static Journal read(Path path) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Journal too big: " + path);
+			}
+			buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			}
+			buffer.flip();
+		}
+
+		try {
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (buffer.get() != MAGIC[i]) {
+					throw new IOException("No journal in " + path);
+				}
+			}
+			int version = buffer.get();
+			if (version < 1 || version > VERSION) {
+				throw new IOException("Unsupported version " + version
+						+ " in " + path);
+			}
+
+			// Sizes are checked before anything is allocated for them, a
+			// damaged file must not run out of memory
+			int length = buffer.getInt();
+			if (length < 4 || length > TextFormat.MAX_LENGTH) {
+				throw new IOException("Unsupported board length " + length
+						+ " in " + path);
+			}
+			long seed = buffer.getLong();
+			int[][] start = null;
+			if (buffer.get() != 0) {
+				if ((long) length * length > buffer.remaining()) {
+					throw new IOException("Journal cut short: " + path);
+				}
+				start = new int[length][length];
+				for (int[] row : start) {
+					for (int column = 0; column < length; column++) {
+						row[column] = (buffer.get() & 0xFF) - 1;
+					}
+				}
+			}
+
+			Journal journal = new Journal(length, seed, null);
+			int size = buffer.getInt();
+			long words = ((long) size + MOVES_PER_LONG - 1) / MOVES_PER_LONG;
+			if (size < 0 || words * 8 > buffer.remaining()) {
+				throw new IOException("Journal cut short: " + path);
+			}
+			journal.moves = new long[Math.max(16, (int) words)];
+			for (int word = 0; word < words; word++) {
+				journal.moves[word] = buffer.getLong();
+			}
+			journal.size = size;
+			return start == null ? journal : journal.startingFrom(start);
+		} catch (RuntimeException e) {
+			// Buffer underflow
+			throw new IOException("Journal cut short: " + path, e);
+		}
+	}
+
+	/**
+	 * Same moves, other start board
+	 */
+	private Journal startingFrom(int[][] board) {
+		Journal journal = new Journal(length, seed, board);
+		journal.moves = moves;
+		journal.size = size;
+		return journal;
+	}
+
+	private static int[][] copy(int[][] board) {
+		int[][] copy = new int[board.length][];
+		for (int row = 0; row < board.length; row++) {
+			copy[row] = board[row].clone();
+		}
+		return copy;
+	}
+}
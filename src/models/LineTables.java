@@ -0,0 +1,242 @@
+package models;
+
+import utilities.ChangeSet;
+import utilities.ChangeSet.Kind;
+import utilities.Direction;
+
+/**
+ * Model class: LineTables, the moves of all 65,536 possible lines of a packed
+ * 4x4 board for one merge limit, built once with MoveKernel so packed boards
+ * follow the same rules as Board. A packed board is moved with four lookups,
+ * whatever the merge limit.
+ * 
+ * Tables are shared through of(), BitBoard uses the tables of the original
+ * game and a RuleSet the tables of its merge limit.
+ */
+final class LineTables {
+
+	private static final int LENGTH = BitBoard.LENGTH;
+
+	private static final int LINES = 1 << 16;
+
+	// Tables per merge limit, a line of four allows at most three merges
+	private static final LineTables[] TABLES = new LineTables[LENGTH];
+
+	// Line table entries: moved line in the low 16 bits and the amount of
+	// changes (Board's 'changed lines' entries for that line) in the next 8
+	// bits
+	private final int[] lineEast = new int[LINES];
+	private final int[] lineWest = new int[LINES];
+
+	// Merged values + 1 of the line, a nibble per merge
+	private final char[] mergesEast = new char[LINES];
+	private final char[] mergesWest = new char[LINES];
+
+	// Cells of the moved line holding the result of a merge, a nibble of 1
+	// for each of them
+	private final char[] mergedEast = new char[LINES];
+	private final char[] mergedWest = new char[LINES];
+
+	private LineTables(int mergeLimit) {
+		MoveKernel kernel = new MoveKernel(LENGTH, mergeLimit);
+		ChangeSet changeSet = new ChangeSet();
+		kernel.record(changeSet);
+
+		int[] line = new int[LENGTH];
+		for (int packed = 0; packed < LINES; packed++) {
+			// East: values move towards the highest nibble
+			unpackLine(packed, line);
+			changeSet.clear(LENGTH);
+			int changes = kernel.moveLine(line, 0, 1);
+			lineEast[packed] = packLine(line) | changes << 16;
+			mergesEast[packed] = packMerges(kernel);
+			mergedEast[packed] = packMerged(changeSet);
+
+			// West: values move towards the lowest nibble
+			unpackLine(packed, line);
+			changeSet.clear(LENGTH);
+			changes = kernel.moveLine(line, LENGTH - 1, -1);
+			lineWest[packed] = packLine(line) | changes << 16;
+			mergesWest[packed] = packMerges(kernel);
+			mergedWest[packed] = packMerged(changeSet);
+		}
+	}
+
+	/**
+	 * Get the tables for a merge limit, built on first use
+	 * 
+	 * @param mergeLimit
+	 *            Merges a line allows per move, at least 1
+	 * @return Shared tables
+	 */
+	static synchronized LineTables of(int mergeLimit) {
+		int limit = Math.min(mergeLimit, LENGTH - 1);
+		if (TABLES[limit] == null) {
+			TABLES[limit] = new LineTables(limit);
+		}
+		return TABLES[limit];
+	}
+
+	/**
+	 * Move all lines of a packed board, see BitBoard.move
+	 */
+	long move(long packed, Direction direction) {
+		switch (direction) {
+		case EAST:
+			return moveRows(packed, lineEast);
+		case WEST:
+			return moveRows(packed, lineWest);
+		case SOUTH:
+			return BitBoard.transpose(moveRows(BitBoard.transpose(packed),
+					lineEast));
+		case NORTH:
+			return BitBoard.transpose(moveRows(BitBoard.transpose(packed),
+					lineWest));
+		default:
+			return packed;
+		}
+	}
+
+	/**
+	 * Directions that change a packed board, see BitBoard.legalMoves
+	 */
+	int legalMoves(long packed) {
+		long transposed = BitBoard.transpose(packed);
+		int legal = 0;
+		if (moveRows(packed, lineEast) != packed) {
+			legal |= 1 << Direction.EAST.ordinal();
+		}
+		if (moveRows(packed, lineWest) != packed) {
+			legal |= 1 << Direction.WEST.ordinal();
+		}
+		if (moveRows(transposed, lineEast) != transposed) {
+			legal |= 1 << Direction.SOUTH.ordinal();
+		}
+		if (moveRows(transposed, lineWest) != transposed) {
+			legal |= 1 << Direction.NORTH.ordinal();
+		}
+		return legal;
+	}
+
+	/**
+	 * Amount of changes of every line during a move, see BitBoard.changes
+	 */
+	int changes(long packed, Direction direction) {
+		switch (direction) {
+		case EAST:
+			return countRows(packed, lineEast, false);
+		case WEST:
+			return countRows(packed, lineWest, false);
+		case SOUTH:
+			// Line 0 is the rightmost column
+			return countRows(BitBoard.transpose(packed), lineEast, true);
+		case NORTH:
+			return countRows(BitBoard.transpose(packed), lineWest, false);
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Values that merge during a move
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @param direction
+	 *            Which way to move the values
+	 * @return Value + 1 of every merged pair, before merging, one per nibble
+	 *         and 16 bits per line. Nibbles without a merge are 0
+	 */
+	long merges(long packed, Direction direction) {
+		switch (direction) {
+		case EAST:
+			return lookupRows(packed, mergesEast);
+		case WEST:
+			return lookupRows(packed, mergesWest);
+		case SOUTH:
+			return lookupRows(BitBoard.transpose(packed), mergesEast);
+		case NORTH:
+			return lookupRows(BitBoard.transpose(packed), mergesWest);
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Cells that hold the result of a merge after a move, see
+	 * BitBoard.merged
+	 */
+	long merged(long packed, Direction direction) {
+		switch (direction) {
+		case EAST:
+			return lookupRows(packed, mergedEast);
+		case WEST:
+			return lookupRows(packed, mergedWest);
+		case SOUTH:
+			return BitBoard.transpose(lookupRows(BitBoard.transpose(packed),
+					mergedEast));
+		case NORTH:
+			return BitBoard.transpose(lookupRows(BitBoard.transpose(packed),
+					mergedWest));
+		default:
+			return 0;
+		}
+	}
+
+	private static long moveRows(long packed, int[] table) {
+		return (long) (table[(int) packed & 0xFFFF] & 0xFFFF)
+				| (long) (table[(int) (packed >>> 16) & 0xFFFF] & 0xFFFF) << 16
+				| (long) (table[(int) (packed >>> 32) & 0xFFFF] & 0xFFFF) << 32
+				| (long) (table[(int) (packed >>> 48) & 0xFFFF] & 0xFFFF) << 48;
+	}
+
+	private static int countRows(long packed, int[] table, boolean reversed) {
+		int changes = 0;
+		for (int row = 0; row < LENGTH; row++) {
+			int entry = table[(int) (packed >>> 16 * row) & 0xFFFF];
+			int count = entry >>> 16 & 0xFF;
+			int line = reversed ? LENGTH - 1 - row : row;
+			changes |= count << 8 * line;
+		}
+		return changes;
+	}
+
+	private static long lookupRows(long packed, char[] table) {
+		return (long) table[(int) packed & 0xFFFF]
+				| (long) table[(int) (packed >>> 16) & 0xFFFF] << 16
+				| (long) table[(int) (packed >>> 32) & 0xFFFF] << 32
+				| (long) table[(int) (packed >>> 48) & 0xFFFF] << 48;
+	}
+
+	private static char packMerged(ChangeSet changes) {
+		int merged = 0;
+		for (int i = 0; i < changes.size(); i++) {
+			if (changes.getKind(i) == Kind.MERGE) {
+				merged |= 1 << 4 * changes.getCell(i);
+			}
+		}
+		return (char) merged;
+	}
+
+	private static char packMerges(MoveKernel kernel) {
+		int merges = 0;
+		for (int merge = 0; merge < kernel.getMerges(); merge++) {
+			merges |= kernel.getMerged(merge) + 1 << 4 * merge;
+		}
+		return (char) merges;
+	}
+
+	private static void unpackLine(int packed, int[] line) {
+		for (int i = 0; i < LENGTH; i++) {
+			line[i] = (packed >>> 4 * i & 0xF) - 1;
+		}
+	}
+
+	private static int packLine(int[] line) {
+		int packed = 0;
+		for (int i = 0; i < LENGTH; i++) {
+			packed |= (line[i] + 1 & 0xF) << 4 * i;
+		}
+		return packed;
+	}
+}
@@ -0,0 +1,225 @@
+package models;
+
+import utilities.ChangeSet;
+import utilities.ChangeSet.Kind;
+
+/**
+ * Model class: MoveKernel, moves a single line of a flat board towards its
+ * end according to the rules of TEN! The line is addressed by the index of
+ * its start and a stride, so every direction is walked in place without
+ * rotating or mirroring the board.
+ * 
+ * The result is the same as repeatedly moving every value one cell at a time
+ * (the way Board used to do it), but the line is walked once: values that
+ * already reached the end form one block that only changes by merging, and
+ * every other block moves one cell per round until it joins that block.
+ * 
+ * Changed cells can be recorded in a ChangeSet, as merges or slides, and
+ * update the ZobristHash of the board.
+ * 
+ * A kernel keeps scratch space for one line, so it is not thread safe.
+ */
+final class MoveKernel {
+
+	private final int length;
+
+	// Maximum amount of merges per line
+	private final int mergeLimit;
+
+	// Values on the line and their distance to the end, end first
+	private final int[] values;
+	private final int[] distances;
+
+	// Values that reached the end of the line, end first, and whether they
+	// are the result of a merge
+	private final int[] end;
+	private final boolean[] endMerged;
+
+	// Values that merged during the last move, before merging
+	private final int[] merged;
+	private int merges;
+
+	// Where changed cells are recorded, null to record nothing
+	private ChangeSet changes;
+
+	// Hash of the board, updated for every changed cell, null for none
+	private ZobristHash hash;
+
+	/**
+	 * Constructor for MoveKernel
+	 * 
+	 * @param length
+	 *            Amount of cells on one line
+	 * @param mergeLimit
+	 *            Merges a line allows per move, see RuleSet
+	 */
+	MoveKernel(int length, int mergeLimit) {
+		this.length = length;
+		this.mergeLimit = Math.min(mergeLimit, length - 1);
+		values = new int[length];
+		distances = new int[length];
+		end = new int[length];
+		endMerged = new boolean[length];
+		merged = new int[this.mergeLimit];
+	}
+
+	/**
+	 * Move a line towards its end, merging equal values at most mergeLimit
+	 * times
+	 * 
+	 * @param cells
+	 *            Flat board, -1 is an empty cell
+	 * @param start
+	 *            Index of the first cell of the line
+	 * @param stride
+	 *            Distance between the indices of two cells on the line
+	 * @return Amount of single steps made, every slide and every merge of one
+	 *         value counts as one. 0 if the line has not changed
+	 */
+	int moveLine(int[] cells, int start, int stride) {
+		// Collect values, starting at the end of the line
+		int last = start + (length - 1) * stride;
+		int tiles = 0;
+		for (int distance = 0; distance < length; distance++) {
+			int value = cells[last - distance * stride];
+			if (value != -1) {
+				values[tiles] = value;
+				distances[tiles] = distance;
+				tiles++;
+			}
+		}
+
+		merges = 0;
+		if (tiles == 0) {
+			return 0;
+		}
+
+		int steps = 0;
+
+		// Block at the end of the line, values not joined yet
+		int size = 0;
+		int next = 0;
+		int outside = tiles;
+
+		// Pairs in the end block before this index are known to differ
+		int checked = 0;
+
+		// Empty cells between the end block and the next block
+		int gap = distances[0];
+
+		while (true) {
+			if (merges < mergeLimit) {
+				// Only the pair closest to the end merges in a round
+				int pair = -1;
+				for (int p = checked; p < size - 1; p++) {
+					if (end[p] == end[p + 1]) {
+						pair = p;
+						break;
+					}
+				}
+
+				if (pair != -1) {
+					merged[merges] = end[pair];
+					end[pair]++;
+					endMerged[pair] = true;
+					System.arraycopy(end, pair + 2, end, pair + 1, size - pair
+							- 2);
+					System.arraycopy(endMerged, pair + 2, endMerged, pair + 1,
+							size - pair - 2);
+
+					// Merged value and everything behind it moved one cell
+					steps += size - pair - 1 + outside;
+					size--;
+					merges++;
+					checked = Math.max(0, pair - 1);
+					continue;
+				}
+				checked = Math.max(0, size - 1);
+			}
+
+			if (next == tiles) {
+				break;
+			}
+
+			// Blocks outside move one cell per round until the gap is closed
+			steps += gap * outside;
+
+			// Next block joins the end block
+			do {
+				endMerged[size] = false;
+				end[size++] = values[next++];
+				outside--;
+			} while (next < tiles && distances[next] == distances[next - 1] + 1);
+
+			if (next < tiles) {
+				gap = distances[next] - distances[next - 1] - 1;
+			}
+		}
+
+		if (steps == 0) {
+			return 0;
+		}
+
+		// Write the line back, clearing cells the values moved away from
+		for (int distance = 0; distance < size; distance++) {
+			int cell = last - distance * stride;
+			if (changes != null
+					&& (cells[cell] != end[distance] || endMerged[distance])) {
+				changes.add(cell, cells[cell], end[distance],
+						endMerged[distance] ? Kind.MERGE : Kind.SLIDE);
+			}
+			if (hash != null && cells[cell] != end[distance]) {
+				hash.update(cell, cells[cell], end[distance]);
+			}
+			cells[cell] = end[distance];
+		}
+		for (int distance = size; distance <= distances[tiles - 1]; distance++) {
+			int cell = last - distance * stride;
+			if (changes != null && cells[cell] != -1) {
+				changes.add(cell, cells[cell], -1, Kind.SLIDE);
+			}
+			if (hash != null && cells[cell] != -1) {
+				hash.update(cell, cells[cell], -1);
+			}
+			cells[cell] = -1;
+		}
+
+		return steps;
+	}
+
+	/**
+	 * Record the cells changed by every following moveLine
+	 * 
+	 * @param changes
+	 *            ChangeSet to add changes to, null to stop recording
+	 */
+	void record(ChangeSet changes) {
+		this.changes = changes;
+	}
+
+	/**
+	 * Update a hash for the cells changed by every following moveLine
+	 * 
+	 * @param hash
+	 *            Hash of the board, null to stop updating
+	 */
+	void hash(ZobristHash hash) {
+		this.hash = hash;
+	}
+
+	/**
+	 * @return Amount of merges during the last moveLine
+	 */
+	int getMerges() {
+		return merges;
+	}
+
+	/**
+	 * @param merge
+	 *            Number of the merge, below getMerges()
+	 * @return Value of the two cells that merged, before merging
+	 */
+	int getMerged(int merge) {
+		return merged[merge];
+	}
+}
@@ -0,0 +1,86 @@
+package models;
+
+import java.util.Random;
+
+import utilities.Direction;
+import utilities.SeededRandom;
+
+/**
+ * SpawnPolicy of the rules of TEN!: the zeroes of a new game go to random
+ * empty cells, and after a move every change of a line is an equally likely
+ * entry to pick the line from.
+ * 
+ * By default the numbers come from a SeededRandom, which is not shared and
+ * needs no atomic update per number, unlike java.util.Random. A policy for
+ * another board or thread is split off with split(), so games can be played
+ * in parallel and still be repeated from a single seed.
+ */
+public class RandomSpawnPolicy implements SpawnPolicy {
+
+	private final Random rand;
+
+	/**
+	 * Constructor for RandomSpawnPolicy with a seed that differs every time
+	 */
+	public RandomSpawnPolicy() {
+		this(new SeededRandom());
+	}
+
+	/**
+	 * Constructor for RandomSpawnPolicy
+	 * 
+	 * @param seed
+	 *            Seed of its SeededRandom
+	 */
+	public RandomSpawnPolicy(long seed) {
+		this(new SeededRandom(seed));
+	}
+
+	/**
+	 * Constructor for RandomSpawnPolicy drawing from a Random of the caller,
+	 * for example a SeededRandom whose state is saved with a game
+	 * 
+	 * @param rand
+	 *            Random used for placing zeroes
+	 */
+	public RandomSpawnPolicy(Random rand) {
+		this.rand = rand;
+	}
+
+	/**
+	 * Create an independent policy, seeded from this one
+	 * 
+	 * @return New policy with its own SeededRandom
+	 */
+	public RandomSpawnPolicy split() {
+		return new RandomSpawnPolicy(rand.nextLong());
+	}
+
+	@Override
+	public int resetCell(int[] cells, int length) {
+		while (true) {
+			int column = rand.nextInt(length);
+			int row = rand.nextInt(length);
+			if (cells[row * length + column] == -1) {
+				return row * length + column;
+			}
+		}
+	}
+
+	@Override
+	public int spawnLine(int[] cells, int length, Direction direction,
+			int[] lineChanges) {
+		int entries = 0;
+		for (int line = 0; line < length; line++) {
+			entries += lineChanges[line];
+		}
+
+		int entry = rand.nextInt(entries);
+		int line = 0;
+		while (entry >= lineChanges[line]) {
+			entry -= lineChanges[line];
+			line++;
+		}
+		return line;
+	}
+}
@@ -0,0 +1,186 @@
+package models;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import utilities.Direction;
+import utilities.SeededRandom;
+import utilities.TextFormat;
+
+/**
+ * Model class: Replayer plays a Journal again on a Board of its own. The
+ * board is seeded the same way as in the recorded game, so every spawn lands
+ * where it did and the moves give the same boards and score.
+ * 
+ * Every interval moves a checkpoint keeps the board and the state of the
+ * Random. Seeking restores the nearest checkpoint before the target and
+ * replays only the moves after it, in both directions.
+ */
+public class Replayer {
+
+	/**
+	 * Moves between checkpoints when none is given
+	 */
+	public static final int CHECKPOINT_INTERVAL = 4096;
+
+	private final Journal journal;
+	private final int interval;
+
+	private final SeededRandom rand;
+	private final Board board;
+
+	// Moves replayed so far
+	private int position;
+
+	// Checkpoint i is at move i * interval
+	private final List<Checkpoint> checkpoints = new ArrayList<Checkpoint>();
+
+	/**
+	 * Constructor for Replayer, positioned before the first move
+	 * 
+	 * @param journal
+	 *            Journal to replay
+	 */
+	public Replayer(Journal journal) {
+		this(journal, CHECKPOINT_INTERVAL);
+	}
+
+	/**
+	 * Constructor for Replayer, positioned before the first move
+	 * 
+	 * @param journal
+	 *            Journal to replay
+	 * @param interval
+	 *            Moves between checkpoints
+	 */
+	public Replayer(Journal journal, int interval) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("Interval must be positive");
+		}
+		this.journal = journal;
+		this.interval = interval;
+
+		rand = new SeededRandom(journal.getSeed());
+		board = new Board(journal.getLength(), rand);
+		if (journal.getStart() == null) {
+			board.reset();
+		} else {
+			board.set(journal.getStart());
+		}
+		checkpoints.add(new Checkpoint(board.get(), rand.getState()));
+	}
+
+	/**
+	 * @return Board in the state after the replayed moves, listeners may be
+	 *         added to it
+	 */
+	public Board getBoard() {
+		return board;
+	}
+
+	/**
+	 * @return Amount of moves replayed
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	/**
+	 * Replay the next move
+	 * 
+	 * @return False if there are no more moves
+	 * @throws IllegalStateException
+	 *             If the move does not change the board, the journal is not of
+	 *             this game
+	 */
+	public boolean step() {
+		if (position == journal.size()) {
+			return false;
+		}
+
+		Direction direction = journal.get(position);
+		if (!board.move(direction)) {
+			throw new IllegalStateException("Move " + position + " ("
+					+ direction + ") does not change the board");
+		}
+		position++;
+
+		if (position % interval == 0
+				&& checkpoints.size() == position / interval) {
+			checkpoints.add(new Checkpoint(board.get(), rand.getState()));
+		}
+		return true;
+	}
+
+	/**
+	 * Go to the board after a number of moves
+	 * 
+	 * @param move
+	 *            Amount of moves to have replayed, limited to the journal
+	 */
+	public void seek(int move) {
+		move = Math.max(0, Math.min(move, journal.size()));
+
+		// Closest known checkpoint, unless the current position is closer
+		int index = Math.min(move / interval, checkpoints.size() - 1);
+		if (move < position || index * interval > position) {
+			Checkpoint checkpoint = checkpoints.get(index);
+			rand.setState(checkpoint.state);
+			board.set(checkpoint.cells);
+			position = index * interval;
+		}
+
+		while (position < move) {
+			step();
+		}
+	}
+
+	/**
+	 * Replay a stored journal and print the final board, or the board after a
+	 * given move
+	 * 
+	 * @param args
+	 *            Journal file and optionally the amount of moves to replay
+	 * @throws IOException
+	 *             If the journal can not be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: Replayer journal" + Journal.EXTENSION
+					+ " [moves]");
+			System.exit(1);
+		}
+
+		Journal journal = Journal.read(Paths.get(args[0]));
+		int moves = args.length > 1 ? Integer.parseInt(args[1]) : journal
+				.size();
+
+		Replayer replayer = new Replayer(journal);
+		long start = System.nanoTime();
+		replayer.seek(moves);
+		long nanos = System.nanoTime() - start;
+
+		TextFormat.write(replayer.getBoard().get(),
+				Channels.newChannel(System.out));
+		System.out.printf("Move %d of %d, score %d, replayed in %.1f ms%n",
+				replayer.getPosition(), journal.size(), replayer.getBoard()
+						.getScore(), nanos / 1e6);
+	}
+
+	/**
+	 * Board and Random state at a move
+	 */
+	private static final class Checkpoint {
+
+		final int[][] cells;
+		final long state;
+
+		Checkpoint(int[][] cells, long state) {
+			this.cells = cells;
+			this.state = state;
+		}
+	}
+}
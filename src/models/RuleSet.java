@@ -0,0 +1,220 @@
+package models;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Model class: RuleSet, the rules a game of TEN! is played by: the length of
+ * a side of the board, the merges a line allows per move, the value that wins
+ * and the value of a spawned cell. Board, Score and the controllers read them
+ * from here instead of knowing them.
+ * 
+ * Rule sets are immutable and shared, of() returns the same instance for the
+ * same rules. The tables that move a packed 4x4 board are built once for a
+ * merge limit and cached, so a variant moves as fast as the original game.
+ */
+public final class RuleSet {
+
+	/**
+	 * Merges per line per move of the original game
+	 */
+	public static final int MERGE_LIMIT = 2;
+
+	/**
+	 * Value that wins the original game
+	 */
+	public static final int TARGET = 10;
+
+	/**
+	 * Value of a spawned cell in the original game
+	 */
+	public static final int SPAWN_VALUE = 0;
+
+	// Highest value that is counted, a higher target does not fit the score
+	private static final int MAX_TARGET = 99;
+
+	// Every rule set handed out, so equal rules share one instance
+	private static final ConcurrentMap<RuleSet, RuleSet> RULE_SETS =
+			new ConcurrentHashMap<RuleSet, RuleSet>();
+
+	/**
+	 * Rules of the original 4x4 game
+	 */
+	public static final RuleSet DEFAULT = of(4, MERGE_LIMIT, TARGET,
+			SPAWN_VALUE);
+
+	private final int length;
+	private final int mergeLimit;
+	private final int target;
+	private final int spawnValue;
+
+	// Tables of packed moves, built on first use
+	private volatile LineTables tables;
+
+	private RuleSet(int length, int mergeLimit, int target, int spawnValue) {
+		this.length = length;
+		this.mergeLimit = mergeLimit;
+		this.target = target;
+		this.spawnValue = spawnValue;
+	}
+
+	/**
+	 * Get the rule set for a variant of TEN!
+	 * 
+	 * @param length
+	 *            Length of one side of the board (at least 4)
+	 * @param mergeLimit
+	 *            Merges a line allows per move, at least 1. More than length -
+	 *            1 is the same as no limit
+	 * @param target
+	 *            Value that wins the game, from 1 to 99
+	 * @param spawnValue
+	 *            Value of a spawned cell, from 0 to below target
+	 * @return Shared rule set
+	 * @throws IllegalArgumentException
+	 *             When a rule is out of range
+	 */
+	public static RuleSet of(int length, int mergeLimit, int target,
+			int spawnValue) {
+		if (mergeLimit < 1) {
+			throw new IllegalArgumentException("Merge limit " + mergeLimit
+					+ " is below 1");
+		}
+		if (target < 1 || target > MAX_TARGET) {
+			throw new IllegalArgumentException("Target " + target
+					+ " is not between 1 and " + MAX_TARGET);
+		}
+		if (spawnValue < 0 || spawnValue >= target) {
+			throw new IllegalArgumentException("Spawn value " + spawnValue
+					+ " is not between 0 and target " + target);
+		}
+
+		// Board(int) handles a short side the same way
+		length = Math.max(4, length);
+		mergeLimit = Math.min(mergeLimit, length - 1);
+
+		RuleSet rules = new RuleSet(length, mergeLimit, target, spawnValue);
+		RuleSet shared = RULE_SETS.putIfAbsent(rules, rules);
+		return shared != null ? shared : rules;
+	}
+
+	/**
+	 * @param length
+	 *            Length of one side of the board
+	 * @return Rule set with the same rules for another size of board
+	 */
+	public RuleSet withLength(int length) {
+		if (length == this.length) {
+			return this;
+		}
+		return of(length, mergeLimit, target, spawnValue);
+	}
+
+	/**
+	 * @return Length of one side of the board
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return Merges a line allows per move
+	 */
+	public int getMergeLimit() {
+		return mergeLimit;
+	}
+
+	/**
+	 * @return Value that wins the game
+	 */
+	public int getTarget() {
+		return target;
+	}
+
+	/**
+	 * @return Value of a spawned cell
+	 */
+	public int getSpawnValue() {
+		return spawnValue;
+	}
+
+	/**
+	 * Tables that move a packed board by these rules
+	 * 
+	 * @return Tables, null when the board is not 4x4
+	 */
+	LineTables getTables() {
+		if (length != BitBoard.LENGTH) {
+			return null;
+		}
+		LineTables built = tables;
+		if (built == null) {
+			built = LineTables.of(mergeLimit);
+			tables = built;
+		}
+		return built;
+	}
+
+	/**
+	 * Whether these are the rules of the original game, on a board of any
+	 * size
+	 * 
+	 * @return Whether only the length may differ from DEFAULT
+	 */
+	public boolean isOriginal() {
+		return mergeLimit == Math.min(MERGE_LIMIT, length - 1)
+				&& target == TARGET && spawnValue == SPAWN_VALUE;
+	}
+
+	/**
+	 * @return Lowest score that wins the game
+	 */
+	public int getWinningScore() {
+		return target * 10;
+	}
+
+	/**
+	 * @param score
+	 *            Score of a board, see Board.getScore()
+	 * @return Whether the score wins the game
+	 */
+	public boolean isWon(int score) {
+		return score >= target * 10;
+	}
+
+	/**
+	 * Score for the highest and second highest values on a board. Once the
+	 * highest value reaches the target the second highest no longer counts
+	 * 
+	 * @return highestValue * 10 + secondHighestValue, the second highest
+	 *         value counts up to 9
+	 */
+	public int score(int highest, int secondHighest) {
+		if (highest >= target) {
+			return highest * 10;
+		}
+		return highest * 10 + Math.min(secondHighest, 9);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof RuleSet)) {
+			return false;
+		}
+		RuleSet rules = (RuleSet) other;
+		return length == rules.length && mergeLimit == rules.mergeLimit
+				&& target == rules.target && spawnValue == rules.spawnValue;
+	}
+
+	@Override
+	public int hashCode() {
+		return ((length * 31 + mergeLimit) * 31 + target) * 31 + spawnValue;
+	}
+
+	@Override
+	public String toString() {
+		return length + "x" + length + ", " + mergeLimit
+				+ " merges per line, target " + target + ", spawn "
+				+ spawnValue;
+	}
+}
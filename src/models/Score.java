@@ -1,6 +1,11 @@
 package models;
 
-import java.util.Observable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import metrics.Metrics;
+import utilities.ScoreListener;
 
 /**
  * Model class: Score, belongs to Board
@@ -8,15 +13,36 @@ import java.util.Observable;
  * @author <a href="mailto:mamoru@edwinmiltenburg.nl">Edwin Miltenburg</a>
  * 
  */
-public class Score extends Observable {
+public class Score {
+
+	private final RuleSet rules;
 
 	private int score;
 
+	// Amount of cells per value, empty cells (-1) are not counted. Values up
+	// to the target are counted without growing
+	private int[] counts;
+
+	private List<ScoreListener> listeners = new ArrayList<ScoreListener>();
+
 	/**
-	 * Constructor for Score. Initial value is 0
+	 * Constructor for Score by the rules of the original game. Initial value
+	 * is 0
 	 */
 	public Score() {
+		this(RuleSet.DEFAULT);
+	}
+
+	/**
+	 * Constructor for Score. Initial value is 0
+	 * 
+	 * @param rules
+	 *            Rules the game is played by, for the target and spawn value
+	 */
+	public Score(RuleSet rules) {
+		this.rules = rules;
 		score = 0;
+		counts = new int[rules.getTarget() + 1];
 
 		handleChange();
 	}
@@ -28,40 +54,143 @@ public class Score extends Observable {
 		return score;
 	}
 
+	/**
+	 * @param listener
+	 *            Listener to inform of every update of the score
+	 */
+	public void addListener(ScoreListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * @param listener
+	 *            Listener to stop informing
+	 */
+	public void removeListener(ScoreListener listener) {
+		listeners.remove(listener);
+	}
+
 	/**
 	 * Update score with highest and second highest values on TEN! board to
-	 * maximum of 10.0
+	 * the target, counting every value on the board
 	 */
 	public void update(int[][] board) {
-		int highest = 0;
-		int secondHighest = 0;
+		clear();
 		for (int row = 0; row < board.length; row++) {
 			for (int col = 0; col < board[row].length; col++) {
-				if (highest < board[row][col]) {
-					secondHighest = highest;
-					highest = board[row][col];
-				} else if (secondHighest < board[row][col]) {
-					secondHighest = board[row][col];
-				}
+				add(board[row][col], 1);
 			}
 		}
 
-		// No need to check secondHeighest, because only 2 merges per line are
-		// allowed. Maximum score is 10.0
-		if (highest > 9) {
-			secondHighest = 0;
+		update();
+	}
+
+	/**
+	 * Update score with highest and second highest values on a flat TEN!
+	 * board to the target, counting every value on the board
+	 * 
+	 * @param cells
+	 *            Values of TEN! board row by row
+	 */
+	public void update(int[] cells) {
+		count(cells);
+
+		update();
+	}
+
+	/**
+	 * Count every value on a flat TEN! board, without updating the score
+	 * 
+	 * @param cells
+	 *            Values of TEN! board row by row
+	 */
+	void count(int[] cells) {
+		clear();
+		for (int i = 0; i < cells.length; i++) {
+			add(cells[i], 1);
+		}
+	}
+
+	/**
+	 * Forget all values, for a board that is about to be refilled
+	 */
+	void clear() {
+		for (int value = 0; value < counts.length; value++) {
+			counts[value] = 0;
 		}
+	}
+
+	/**
+	 * Count a spawned value placed on an empty cell
+	 */
+	void spawn() {
+		counts[rules.getSpawnValue()]++;
+	}
 
-		score = highest * 10 + secondHighest;
+	/**
+	 * Count two cells merging into one
+	 * 
+	 * @param value
+	 *            Value of both cells before merging
+	 */
+	void merge(int value) {
+		add(value, -2);
+		add(value + 1, 1);
+		if (Metrics.ENABLED) {
+			Metrics.merged();
+		}
+	}
+
+	/**
+	 * Update score from the counted values, without looking at the board
+	 */
+	void update() {
+		int highest = 0;
+		int secondHighest = 0;
+		for (int value = counts.length - 1; value > 0; value--) {
+			if (counts[value] > 0) {
+				if (highest == 0) {
+					highest = value;
+					if (counts[value] == 1) {
+						continue;
+					}
+				}
+				secondHighest = value;
+				break;
+			}
+		}
+
+		score = rules.score(highest, secondHighest);
 
 		handleChange();
 	}
 
+	private void add(int value, int amount) {
+		if (value < 0) {
+			return;
+		}
+		if (value >= counts.length) {
+			counts = Arrays.copyOf(counts, value + 1);
+		}
+		counts[value] += amount;
+	}
+
 	/**
-	 * On change, update score and notify observers of new score
+	 * Score for the highest and second highest values on a TEN! board by the
+	 * rules of the original game
+	 * 
+	 * @return highestValue * 10 + secondHighestValue with maximum of 100
+	 */
+	static int of(int highest, int secondHighest) {
+		return RuleSet.DEFAULT.score(highest, secondHighest);
+	}
+
+	/**
+	 * On change, update score and notify listeners of new score
 	 */
 	private void handleChange() {
-		this.setChanged();
-		this.notifyObservers((double) score / 10);
+		for (int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).scoreChanged((double) score / 10);
+		}
 	}
 }
@@ -0,0 +1,85 @@
+package models;
+
+import java.util.Arrays;
+
+import utilities.Direction;
+
+/**
+ * SpawnPolicy that replays a fixed list of spawns, so a game or benchmark
+ * comes out the same on every run whatever the moves cost. Every spawn takes
+ * the next number of the script: a cell index for the zeroes of a new game
+ * and a line number after a move.
+ * 
+ * When the script runs out the spawns continue from a fallback policy, or
+ * an IllegalStateException is thrown if there is none.
+ */
+public class ScriptedSpawnPolicy implements SpawnPolicy {
+
+	private final int[] script;
+	private final SpawnPolicy fallback;
+
+	// Index of the next spawn in script
+	private int next;
+
+	/**
+	 * Constructor for ScriptedSpawnPolicy without a fallback
+	 * 
+	 * @param script
+	 *            Cell indices and line numbers in the order they are used
+	 */
+	public ScriptedSpawnPolicy(int... script) {
+		this(script, null);
+	}
+
+	/**
+	 * Constructor for ScriptedSpawnPolicy
+	 * 
+	 * @param script
+	 *            Cell indices and line numbers in the order they are used
+	 * @param fallback
+	 *            Policy used after the script, null to fail instead
+	 */
+	public ScriptedSpawnPolicy(int[] script, SpawnPolicy fallback) {
+		this.script = Arrays.copyOf(script, script.length);
+		this.fallback = fallback;
+	}
+
+	/**
+	 * Start the script over
+	 */
+	public void rewind() {
+		next = 0;
+	}
+
+	/**
+	 * @return Spawns of the script not used yet
+	 */
+	public int getRemaining() {
+		return script.length - next;
+	}
+
+	@Override
+	public int resetCell(int[] cells, int length) {
+		if (next == script.length && fallback != null) {
+			return fallback.resetCell(cells, length);
+		}
+		return nextSpawn();
+	}
+
+	@Override
+	public int spawnLine(int[] cells, int length, Direction direction,
+			int[] lineChanges) {
+		if (next == script.length && fallback != null) {
+			return fallback.spawnLine(cells, length, direction, lineChanges);
+		}
+		return nextSpawn();
+	}
+
+	private int nextSpawn() {
+		if (next == script.length) {
+			throw new IllegalStateException("Spawn script ended after "
+					+ script.length + " spawns");
+		}
+		return script[next++];
+	}
+}
@@ -0,0 +1,43 @@
+package models;
+
+import utilities.Direction;
+
+/**
+ * Strategy that decides where a Board places its zeroes: two on empty cells
+ * of a new game and one at the start of a changed line after every move. A
+ * policy is used by one board at a time, so it may keep state between calls.
+ * 
+ * Cells are passed row by row in a single array like Board keeps them, -1
+ * for an empty cell, and must not be changed by the policy.
+ */
+public interface SpawnPolicy {
+
+	/**
+	 * Choose an empty cell for one of the zeroes of a new game
+	 * 
+	 * @param cells
+	 *            Cells of the board, at least one of them empty
+	 * @param length
+	 *            Length of one side of the board
+	 * @return Index in cells of an empty cell
+	 */
+	int resetCell(int[] cells, int length);
+
+	/**
+	 * Choose the line to place a zero in after a move, the zero goes to the
+	 * start of the line, see Board.lineStart
+	 * 
+	 * @param cells
+	 *            Cells of the board after the move, before the zero is placed
+	 * @param length
+	 *            Length of one side of the board
+	 * @param direction
+	 *            Direction of the move
+	 * @param lineChanges
+	 *            Amount of changes of every line during the move, at least
+	 *            one is not 0
+	 * @return Number of a line with changes
+	 */
+	int spawnLine(int[] cells, int length, Direction direction,
+			int[] lineChanges);
+}
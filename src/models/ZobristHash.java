@@ -0,0 +1,305 @@
+package models;
+
+/**
+ * Model class: ZobristHash, a 64-bit hash of the cells of a board that is
+ * updated per changed cell instead of hashing the whole board again. Every
+ * value on every cell has its own random key, the hash is the XOR of the
+ * keys of all cells that are not empty. Changing a cell XORs out the key of
+ * the old value and XORs in the key of the new one.
+ * 
+ * Keys are scrambled from the cell and the value like SplitMix64 scrambles
+ * its state. Boards up to TABLE_LENGTH long share a table of the keys of the
+ * lowest values per length, other keys are scrambled when needed. A packed
+ * 4x4 board is hashed as a whole with one key per byte of two cells, which
+ * costs less than finding the cells that changed.
+ * 
+ * Optionally a hash is kept per rotation and mirror image of the board. The
+ * lowest of those eight, the canonical hash, is the same for a board and all
+ * of its rotations and mirror images, like BitBoard.canonical.
+ */
+final class ZobristHash {
+
+	// Added to every input before scrambling
+	private static final long SEED = 0x6A09E667F3BCC909L;
+
+	// Spreads the cell and value over all bits before scrambling
+	private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+	// Rotations and mirror images, including the board itself
+	private static final int SYMMETRIES = 8;
+
+	// Longest board with a table of keys
+	private static final int TABLE_LENGTH = 32;
+
+	// Keys per cell in a table, for an empty cell and values 0 to 14
+	private static final int TABLE_VALUES = 16;
+
+	// Tables of keys per length, by cell * 16 + value + 1
+	private static final long[][] TABLES = new long[TABLE_LENGTH + 1][];
+
+	// Keys of a packed board, by byte * 256 + the two cells in that byte
+	private static final long[] BYTE_KEYS = new long[8 * 256];
+
+	static {
+		for (int index = 0; index < 8; index++) {
+			for (int cells = 0; cells < 256; cells++) {
+				BYTE_KEYS[index << 8 | cells] = key(2 * index,
+						(cells & 0xF) - 1)
+						^ key(2 * index + 1, (cells >>> 4) - 1);
+			}
+		}
+	}
+
+	private final int length;
+
+	// Keys of the lowest values on this board, null for a long board
+	private final long[] keys;
+
+	private long hash;
+
+	// Hash of every symmetry but the board itself, null while not kept
+	private long[] symmetric;
+
+	/**
+	 * Constructor for ZobristHash of an empty board, which hashes to 0
+	 * 
+	 * @param length
+	 *            Length of one side of the board
+	 */
+	ZobristHash(int length) {
+		this.length = length;
+		keys = length <= TABLE_LENGTH ? table(length) : null;
+	}
+
+	/**
+	 * @return Hash of the board
+	 */
+	long get() {
+		return hash;
+	}
+
+	/**
+	 * Hash that is the same for all rotations and mirror images of the
+	 * board, kept up to date while isCanonical(), else computed from the
+	 * cells
+	 * 
+	 * @param cells
+	 *            Cells of the board, row by row
+	 * @return Lowest hash of the eight symmetries
+	 */
+	long getCanonical(int[] cells) {
+		long[] hashes = symmetric;
+		if (hashes == null) {
+			hashes = symmetries(cells);
+		}
+		long lowest = hash;
+		for (int symmetry = 1; symmetry < SYMMETRIES; symmetry++) {
+			lowest = Math.min(lowest, hashes[symmetry]);
+		}
+		return lowest;
+	}
+
+	/**
+	 * @return Whether the canonical hash is kept up to date
+	 */
+	boolean isCanonical() {
+		return symmetric != null;
+	}
+
+	/**
+	 * Start or stop keeping the canonical hash up to date, which makes every
+	 * change of a cell eight times as expensive
+	 * 
+	 * @param canonical
+	 *            Whether to keep the hash of every symmetry
+	 * @param cells
+	 *            Current cells of the board, row by row
+	 */
+	void setCanonical(boolean canonical, int[] cells) {
+		symmetric = canonical ? symmetries(cells) : null;
+	}
+
+	/**
+	 * Hash an empty board
+	 * 
+	 * @param canonical
+	 *            Whether to keep the hash of every symmetry
+	 */
+	void clear(boolean canonical) {
+		hash = 0;
+		symmetric = canonical ? new long[SYMMETRIES] : null;
+	}
+
+	/**
+	 * Hash a whole board from scratch
+	 * 
+	 * @param cells
+	 *            Cells of the board, row by row
+	 */
+	void compute(int[] cells) {
+		hash = 0;
+		for (int cell = 0; cell < cells.length; cell++) {
+			hash ^= cellKey(cell, cells[cell]);
+		}
+		if (symmetric != null) {
+			symmetric = symmetries(cells);
+		}
+	}
+
+	/**
+	 * Change the value of a cell
+	 * 
+	 * @param cell
+	 *            Index in cells
+	 * @param oldValue
+	 *            Value before, -1 for an empty cell
+	 * @param newValue
+	 *            Value after, -1 for an empty cell
+	 */
+	void update(int cell, int oldValue, int newValue) {
+		hash ^= cellKey(cell, oldValue) ^ cellKey(cell, newValue);
+		if (symmetric != null) {
+			updateSymmetric(cell, oldValue, newValue);
+		}
+	}
+
+	/**
+	 * Hash a packed board that was moved from the board of this hash
+	 * 
+	 * @param packed
+	 *            Packed board before
+	 * @param moved
+	 *            Packed board after
+	 */
+	void updatePacked(long packed, long moved) {
+		hash = 0;
+		for (int index = 0; index < 8; index++) {
+			hash ^= BYTE_KEYS[index << 8 | (int) (moved >>> 8 * index) & 0xFF];
+		}
+
+		if (symmetric != null) {
+			long different = packed ^ moved;
+			while (different != 0) {
+				int cell = Long.numberOfTrailingZeros(different) >>> 2;
+				updateSymmetric(cell, (int) (packed >>> 4 * cell & 0xF) - 1,
+						(int) (moved >>> 4 * cell & 0xF) - 1);
+				different &= ~(0xFL << 4 * cell);
+			}
+		}
+	}
+
+	/**
+	 * Add the changes collected by another hash of the same board, which
+	 * started from an empty board
+	 * 
+	 * @param changes
+	 *            Hash holding only changes, kept canonical like this one
+	 */
+	void add(ZobristHash changes) {
+		hash ^= changes.hash;
+		if (symmetric != null) {
+			for (int symmetry = 1; symmetry < SYMMETRIES; symmetry++) {
+				symmetric[symmetry] ^= changes.symmetric[symmetry];
+			}
+		}
+	}
+
+	/**
+	 * Key of a value on a cell
+	 * 
+	 * @return Random key, 0 for an empty cell
+	 */
+	static long key(int cell, int value) {
+		if (value == -1) {
+			return 0;
+		}
+		long z = SEED + ((long) cell << 32 | value + 1 & 0xFFFFFFFFL)
+				* GAMMA;
+		z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+		return z ^ z >>> 31;
+	}
+
+	/**
+	 * Get the table of keys for a length, built on first use
+	 */
+	private static synchronized long[] table(int length) {
+		if (TABLES[length] == null) {
+			long[] keys = new long[length * length * TABLE_VALUES];
+			for (int cell = 0; cell < length * length; cell++) {
+				for (int value = 0; value < TABLE_VALUES - 1; value++) {
+					keys[cell * TABLE_VALUES + value + 1] = key(cell, value);
+				}
+			}
+			TABLES[length] = keys;
+		}
+		return TABLES[length];
+	}
+
+	/**
+	 * Key of a value on a cell of this board, from the table when it has one
+	 */
+	private long cellKey(int cell, int value) {
+		if (keys != null && value < TABLE_VALUES - 1) {
+			return keys[cell * TABLE_VALUES + value + 1];
+		}
+		return key(cell, value);
+	}
+
+	private void updateSymmetric(int cell, int oldValue, int newValue) {
+		int row = cell / length;
+		int column = cell % length;
+		for (int symmetry = 1; symmetry < SYMMETRIES; symmetry++) {
+			int image = image(symmetry, row, column);
+			symmetric[symmetry] ^= cellKey(image, oldValue)
+					^ cellKey(image, newValue);
+		}
+	}
+
+	private long[] symmetries(int[] cells) {
+		long[] hashes = new long[SYMMETRIES];
+		for (int cell = 0; cell < cells.length; cell++) {
+			if (cells[cell] == -1) {
+				continue;
+			}
+			int row = cell / length;
+			int column = cell % length;
+			for (int symmetry = 1; symmetry < SYMMETRIES; symmetry++) {
+				hashes[symmetry] ^= cellKey(image(symmetry, row, column),
+						cells[cell]);
+			}
+		}
+		return hashes;
+	}
+
+	/**
+	 * Where a cell ends up after turning or mirroring the board
+	 * 
+	 * @param symmetry
+	 *            1 to 3 for a quarter turn clockwise that many times, 4 to 7
+	 *            for a mirror image in the vertical middle, the main
+	 *            diagonal, the horizontal middle and the other diagonal
+	 * @return Index of the cell on the turned or mirrored board
+	 */
+	private int image(int symmetry, int row, int column) {
+		int last = length - 1;
+		switch (symmetry) {
+		case 1:
+			return column * length + last - row;
+		case 2:
+			return (last - row) * length + last - column;
+		case 3:
+			return (last - column) * length + row;
+		case 4:
+			return row * length + last - column;
+		case 5:
+			return column * length + row;
+		case 6:
+			return (last - row) * length + column;
+		case 7:
+			return (last - column) * length + last - row;
+		default:
+			return row * length + column;
+		}
+	}
+}
@@ -0,0 +1,307 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import utilities.Direction;
+
+/**
+ * Hosts games of TEN! for many players in one process, over a plain text
+ * protocol on a socket. Every connection is handled by its own thread,
+ * virtual when the runtime has them (see Threads). Sessions live in a
+ * SessionStore and lock only themselves, connections never wait for each
+ * other. Boards of idle sessions are spilled to disk beyond the memory budget
+ * of the store.
+ * 
+ * A connection sends one command per line and gets one line back, starting
+ * with OK or ERROR:
+ * 
+ * NEW [size] starts a session, default 4x4, and uses it: OK id
+ * 
+ * USE id continues a session of an earlier connection: OK id
+ * 
+ * MOVE EAST|SOUTH|WEST|NORTH: OK MOVED|ILLEGAL|WON|OVER score, a won or lost
+ * game starts over
+ * 
+ * RESET starts a new game: OK
+ * 
+ * SET v v ... fills the board row by row, -1 for empty: OK
+ * 
+ * SCORE: OK score
+ * 
+ * BOARD: OK length v v ...
+ * 
+ * STATS: OK sessions loadedBytes hits misses evictions
+ * 
+ * QUIT ends the session and the connection: OK
+ * 
+ * Sessions outlive their connection until QUIT.
+ */
+public class GameServer {
+
+	/**
+	 * Port used when none is given
+	 */
+	public static final int DEFAULT_PORT = 4010;
+
+	/**
+	 * Bytes the boards in memory may take when no budget is given
+	 */
+	public static final long DEFAULT_BUDGET = 64L << 20;
+
+	// Largest board a session may ask for
+	private static final int MAX_SIZE = 64;
+
+	private final ServerSocket serverSocket;
+	private final ExecutorService connections;
+
+	private final SessionStore sessions;
+
+	/**
+	 * Constructor for GameServer, listens right away and spills boards to a
+	 * temporary directory beyond the default budget
+	 * 
+	 * @param port
+	 *            Port to listen on, 0 for any free port
+	 * @throws IOException
+	 *             If the port can not be opened
+	 */
+	public GameServer(int port) throws IOException {
+		this(port, Files.createTempDirectory("ten-sessions"), DEFAULT_BUDGET);
+	}
+
+	/**
+	 * Constructor for GameServer, listens right away
+	 * 
+	 * @param port
+	 *            Port to listen on, 0 for any free port
+	 * @param directory
+	 *            Directory for spilled boards
+	 * @param budget
+	 *            Bytes the boards in memory may take
+	 * @throws IOException
+	 *             If the port or the directory can not be opened
+	 */
+	public GameServer(int port, Path directory, long budget)
+			throws IOException {
+		sessions = new SessionStore(directory, budget);
+		serverSocket = new ServerSocket();
+		serverSocket.setReuseAddress(true);
+		// Room for a burst of connections from a load test
+		serverSocket.bind(new InetSocketAddress(port), 4096);
+		connections = Threads.perTask("connection");
+	}
+
+	/**
+	 * @return Port the server listens on
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return Amount of sessions
+	 */
+	public int getSessionCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * @return Store keeping the sessions
+	 */
+	public SessionStore getSessions() {
+		return sessions;
+	}
+
+	/**
+	 * Accept connections until closed
+	 */
+	public void serve() {
+		while (!serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				connections.execute(new Runnable() {
+					@Override
+					public void run() {
+						handle(socket);
+					}
+				});
+			} catch (SocketException e) {
+				// Closed
+			} catch (IOException e) {
+				System.err.println("Accept failed: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Stop accepting connections and close the open ones
+	 * 
+	 * @throws IOException
+	 *             If the server socket can not be closed
+	 */
+	public void close() throws IOException {
+		serverSocket.close();
+		connections.shutdownNow();
+		try {
+			connections.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		sessions.close();
+	}
+
+	/**
+	 * Serve one connection until QUIT or until it is closed
+	 */
+	private void handle(Socket socket) {
+		try (Socket connection = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(
+						connection.getInputStream(), StandardCharsets.US_ASCII));
+				Writer out = new BufferedWriter(new OutputStreamWriter(
+						connection.getOutputStream(), StandardCharsets.US_ASCII))) {
+			connection.setTcpNoDelay(true);
+
+			Session session = null;
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] words = line.trim().split("\\s+");
+				String reply;
+				try {
+					if (words[0].equalsIgnoreCase("NEW")) {
+						session = create(words.length > 1 ? Integer
+								.parseInt(words[1]) : 4);
+						reply = "OK " + session.getId();
+					} else if (words[0].equalsIgnoreCase("USE")) {
+						session = sessions.get(Long.parseLong(words[1]));
+						reply = session == null ? "ERROR no session "
+								+ words[1] : "OK " + session.getId();
+					} else if (words[0].equalsIgnoreCase("STATS")) {
+						reply = "OK " + sessions.size() + " "
+								+ sessions.getLoadedBytes() + " "
+								+ sessions.getHits() + " " + sessions.getMisses()
+								+ " " + sessions.getEvictions();
+					} else if (session == null) {
+						reply = "ERROR no session, send NEW or USE first";
+					} else if (words[0].equalsIgnoreCase("QUIT")) {
+						sessions.remove(session.getId());
+						out.write("OK\n");
+						out.flush();
+						return;
+					} else {
+						reply = execute(session, words);
+					}
+				} catch (NumberFormatException e) {
+					reply = "ERROR not a number: " + e.getMessage();
+				} catch (IllegalArgumentException e) {
+					reply = "ERROR " + e.getMessage();
+				} catch (ArrayIndexOutOfBoundsException e) {
+					reply = "ERROR missing argument";
+				} catch (UncheckedIOException e) {
+					reply = "ERROR session not readable: " + e.getCause();
+				} catch (IllegalStateException e) {
+					// Ended by QUIT on another connection
+					session = null;
+					reply = "ERROR " + e.getMessage();
+				}
+				out.write(reply);
+				out.write('\n');
+
+				// Answer at once unless more commands are already waiting
+				if (!in.ready()) {
+					out.flush();
+				}
+			}
+		} catch (IOException e) {
+			// Connection lost, the session stays for USE
+		}
+	}
+
+	private Session create(int size) {
+		if (size < 4 || size > MAX_SIZE) {
+			throw new IllegalArgumentException("size must be between 4 and "
+					+ MAX_SIZE);
+		}
+		return sessions.create(size);
+	}
+
+	/**
+	 * Run a command on a session
+	 * 
+	 * @return Reply without line end
+	 */
+	private static String execute(Session session, String[] words) {
+		String command = words[0].toUpperCase();
+		switch (command) {
+		case "MOVE":
+			Direction direction;
+			try {
+				direction = Direction.valueOf(words[1].toUpperCase());
+			} catch (IllegalArgumentException e) {
+				return "ERROR unknown direction " + words[1];
+			}
+			Session.Result result = session.move(direction);
+			return "OK " + result + " " + session.getScore();
+		case "RESET":
+			session.reset();
+			return "OK";
+		case "SET":
+			int[] cells = new int[words.length - 1];
+			for (int i = 0; i < cells.length; i++) {
+				cells[i] = Integer.parseInt(words[i + 1]);
+			}
+			return session.set(cells) ? "OK" : "ERROR expected "
+					+ session.getLength() * session.getLength()
+					+ " values of at least -1";
+		case "SCORE":
+			return "OK " + session.getScore();
+		case "BOARD":
+			StringBuilder reply = new StringBuilder("OK ");
+			reply.append(session.getLength());
+			for (int[] row : session.get()) {
+				for (int value : row) {
+					reply.append(' ').append(value);
+				}
+			}
+			return reply.toString();
+		default:
+			return "ERROR unknown command " + words[0];
+		}
+	}
+
+	/**
+	 * Run a server until the process is stopped
+	 * 
+	 * @param args
+	 *            Port to listen on (4010), memory for boards in MB (64) and
+	 *            directory for spilled boards (a temporary one)
+	 * @throws IOException
+	 *             If the port or the directory can not be opened
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		long budget = args.length > 1 ? Long.parseLong(args[1]) << 20
+				: DEFAULT_BUDGET;
+		Path directory = args.length > 2 ? Paths.get(args[2]) : Files
+				.createTempDirectory("ten-sessions");
+		GameServer server = new GameServer(port, directory, budget);
+		System.out.println("Listening on port " + server.getPort()
+				+ (Threads.isVirtual() ? " with virtual threads" : ""));
+		server.serve();
+	}
+}
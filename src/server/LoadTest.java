@@ -0,0 +1,168 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Load test for GameServer: opens many connections at once, each playing its
+ * own session with random moves, and reports throughput and latency. With
+ * host "local" a server is started in this process, which also shows the
+ * memory the sessions take and how often their boards were spilled to disk.
+ */
+public class LoadTest {
+
+	private LoadTest() {
+	}
+
+	/**
+	 * Play moves on one connection
+	 * 
+	 * @return Latency of every request in nanoseconds
+	 */
+	private static long[] play(String host, int port, int moves, long seed)
+			throws IOException {
+		long[] latencies = new long[moves + 1];
+		Random rand = new Random(seed);
+		try (Socket socket = new Socket(host, port);
+				BufferedReader in = new BufferedReader(new InputStreamReader(
+						socket.getInputStream(), StandardCharsets.US_ASCII));
+				Writer out = new BufferedWriter(new OutputStreamWriter(
+						socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+			socket.setTcpNoDelay(true);
+			latencies[0] = request(in, out, "NEW");
+
+			String[] directions = { "EAST", "SOUTH", "WEST", "NORTH" };
+			for (int move = 1; move <= moves; move++) {
+				latencies[move] = request(in, out, "MOVE "
+						+ directions[rand.nextInt(directions.length)]);
+			}
+			// Sessions stay for the memory report, no QUIT
+		}
+		return latencies;
+	}
+
+	private static long request(BufferedReader in, Writer out, String command)
+			throws IOException {
+		long start = System.nanoTime();
+		out.write(command);
+		out.write('\n');
+		out.flush();
+		String reply = in.readLine();
+		if (reply == null || !reply.startsWith("OK")) {
+			throw new IOException(command + " failed: " + reply);
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Run a load test
+	 * 
+	 * @param args
+	 *            Host or "local" (local), port (4010), amount of connections
+	 *            (1000), moves per connection (100) and memory for boards of
+	 *            a local server in MB (64)
+	 * @throws Exception
+	 *             If a connection fails
+	 */
+	public static void main(String[] args) throws Exception {
+		String host = args.length > 0 ? args[0] : "local";
+		int port = args.length > 1 ? Integer.parseInt(args[1])
+				: GameServer.DEFAULT_PORT;
+		int clients = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		final int moves = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+		long budget = args.length > 4 ? Long.parseLong(args[4]) << 20
+				: GameServer.DEFAULT_BUDGET;
+
+		GameServer server = null;
+		long memoryBefore = 0;
+		if (host.equals("local")) {
+			host = "localhost";
+			memoryBefore = usedMemory();
+			server = new GameServer(0,
+					Files.createTempDirectory("ten-sessions"), budget);
+			port = server.getPort();
+			final GameServer serving = server;
+			Thread acceptor = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					serving.serve();
+				}
+			}, "acceptor");
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+
+		ExecutorService executor = Threads.perTask("client");
+		List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+		final String target = host;
+		final int targetPort = port;
+		long start = System.nanoTime();
+		for (int client = 0; client < clients; client++) {
+			final long seed = client;
+			results.add(executor.submit(new Callable<long[]>() {
+				@Override
+				public long[] call() throws IOException {
+					return play(target, targetPort, moves, seed);
+				}
+			}));
+		}
+
+		long[] latencies = new long[clients * (moves + 1)];
+		int count = 0;
+		try {
+			for (Future<long[]> result : results) {
+				long[] client = result.get();
+				System.arraycopy(client, 0, latencies, count, client.length);
+				count += client.length;
+			}
+		} catch (ExecutionException e) {
+			System.err.println("Client failed: " + e.getCause());
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		executor.shutdown();
+
+		Arrays.sort(latencies, 0, count);
+		System.out.println("Connections:  " + clients
+				+ (Threads.isVirtual() ? " on virtual threads" : ""));
+		System.out.printf("Requests:     %d in %.1f s, %.0f/s%n", count,
+				seconds, count / seconds);
+		System.out.printf("Latency:      p50 %.0f us, p99 %.0f us, max %.0f"
+				+ " us%n", latencies[count / 2] / 1e3,
+				latencies[(int) (count * 0.99)] / 1e3,
+				latencies[count - 1] / 1e3);
+
+		if (server != null) {
+			int sessions = server.getSessionCount();
+			System.out.printf("Sessions:     %d, %.0f bytes each%n", sessions,
+					(double) (usedMemory() - memoryBefore) / sessions);
+			SessionStore store = server.getSessions();
+			System.out.printf("Boards:       %d KB loaded, %d hits, %d misses,"
+					+ " %d evictions%n", store.getLoadedBytes() >> 10,
+					store.getHits(), store.getMisses(), store.getEvictions());
+			server.close();
+		}
+	}
+}
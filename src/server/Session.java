@@ -0,0 +1,260 @@
+package server;
+
+import models.Board;
+import utilities.Direction;
+import utilities.SeededRandom;
+
+/**
+ * One game hosted by the GameServer: a Board played like AppController plays
+ * it, without a View. A won or lost game starts over right away.
+ * 
+ * The board of an idle session may be spilled to disk by its SessionStore,
+ * the next access loads it back. Methods are synchronized on the session
+ * only, sessions never wait for each other. Once removed from its store the
+ * session throws an IllegalStateException on every access.
+ */
+public class Session {
+
+	/**
+	 * Result of a move
+	 */
+	public enum Result {
+		/** The board changed */
+		MOVED,
+		/** The direction does not change the board, nothing happened */
+		ILLEGAL,
+		/** The move won the game, the board was reset */
+		WON,
+		/** No move is left after the move, the board was reset */
+		OVER
+	}
+
+	private final long id;
+	private final int length;
+	private final SessionStore store;
+
+	// Null while spilled
+	private Board board;
+	private SeededRandom rand;
+
+	// Slot on disk, -1 before the first spill
+	private long slot = -1;
+
+	// Counts accesses, so a spill notices the session was used meanwhile
+	private long accesses;
+	private volatile long lastAccess;
+
+	private boolean removed;
+
+	/**
+	 * Constructor for Session, starts a new game
+	 * 
+	 * @param id
+	 *            Number of the session
+	 * @param size
+	 *            Length of one side of the board
+	 * @param store
+	 *            Store keeping the session
+	 */
+	Session(long id, int size, SessionStore store) {
+		this.id = id;
+		this.store = store;
+		rand = new SeededRandom();
+		board = new Board(size, rand);
+		board.reset();
+		length = board.getLength();
+		lastAccess = System.nanoTime();
+	}
+
+	/**
+	 * @return Number of the session
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * @return Length of one side of the board
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Start a new game
+	 */
+	public synchronized void reset() {
+		board().reset();
+	}
+
+	/**
+	 * Move like AppController does: only a legal move is made, a won or lost
+	 * game starts over
+	 * 
+	 * @param direction
+	 *            Which way to move the values on the TEN! board
+	 * @return What happened
+	 */
+	public synchronized Result move(Direction direction) {
+		Board board = board();
+		if (!board.isLegal(direction)) {
+			return Result.ILLEGAL;
+		}
+		board.move(direction);
+
+		if (board.getRules().isWon(board.getScore())) {
+			board.reset();
+			return Result.WON;
+		}
+		if (board.getLegalMoves() == 0) {
+			board.reset();
+			return Result.OVER;
+		}
+		return Result.MOVED;
+	}
+
+	/**
+	 * Fill the board with predetermined values
+	 * 
+	 * @param cells
+	 *            Values row by row
+	 * @return False if the values are not a valid board of this size
+	 */
+	public synchronized boolean set(int[] cells) {
+		if (cells.length != length * length) {
+			return false;
+		}
+		int[][] values = new int[length][length];
+		for (int cell = 0; cell < cells.length; cell++) {
+			if (cells[cell] < -1) {
+				return false;
+			}
+			values[cell / length][cell % length] = cells[cell];
+		}
+		board().set(values);
+		return true;
+	}
+
+	/**
+	 * @return Current score
+	 */
+	public synchronized int getScore() {
+		return board().getScore();
+	}
+
+	/**
+	 * @return Values on the board row by row
+	 */
+	public synchronized int[][] get() {
+		return board().get();
+	}
+
+	/**
+	 * @return System.nanoTime() of the last access
+	 */
+	long getLastAccess() {
+		return lastAccess;
+	}
+
+	/**
+	 * @return Whether the board is in memory
+	 */
+	synchronized boolean isLoaded() {
+		return board != null;
+	}
+
+	/**
+	 * Write the board to disk and drop it from memory, unless the session is
+	 * used meanwhile. Only the evicting thread calls this, the disk is
+	 * written without holding the lock of the session
+	 * 
+	 * @return Whether the board was dropped
+	 */
+	boolean spill() {
+		int[][] cells;
+		long state;
+		long seen;
+		long target;
+		synchronized (this) {
+			if (board == null || removed) {
+				return false;
+			}
+			cells = board.get();
+			state = rand.getState();
+			seen = accesses;
+			target = slot;
+		}
+
+		if (!SessionStore.isStorable(cells)) {
+			return false;
+		}
+		boolean allocated = target < 0;
+		if (allocated) {
+			target = store.allocate(length);
+		}
+		store.write(length, target, cells, state);
+
+		synchronized (this) {
+			if (removed) {
+				// A slot the session already had was freed by remove()
+				if (allocated) {
+					store.free(length, target);
+				}
+				return false;
+			}
+			slot = target;
+			if (accesses != seen) {
+				// Used while writing, it stays in memory
+				return false;
+			}
+			board = null;
+			rand = null;
+			return true;
+		}
+	}
+
+	/**
+	 * Mark the session as ended and free its slot on disk, also when the
+	 * board was loaded back from it
+	 * 
+	 * @return Whether the board was in memory
+	 */
+	synchronized boolean remove() {
+		removed = true;
+		if (slot >= 0) {
+			store.free(length, slot);
+			slot = -1;
+		}
+		boolean loaded = board != null;
+		board = null;
+		rand = null;
+		return loaded;
+	}
+
+	/**
+	 * Board of the session, loaded back if it was spilled
+	 * 
+	 * @throws IllegalStateException
+	 *             When the session was removed
+	 */
+	private Board board() {
+		if (removed) {
+			throw new IllegalStateException("Session " + id + " has ended");
+		}
+		accesses++;
+		lastAccess = System.nanoTime();
+		if (board != null) {
+			store.hit();
+			return board;
+		}
+
+		int[][] cells = new int[length][length];
+		long state = store.read(length, slot, cells);
+		rand = new SeededRandom();
+		rand.setState(state);
+		board = new Board(length, rand);
+		board.set(cells);
+		store.loaded(this);
+		return board;
+	}
+}
@@ -0,0 +1,373 @@
+package server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the sessions of a GameServer, with the boards in memory up to a byte
+ * budget. When the boards take more, a background thread spills the least
+ * recently used ones to disk until a tenth of the budget is free again. A
+ * spilled board is loaded back by the next access to its session.
+ * 
+ * A session itself stays in memory while spilled, only its Board and random
+ * generator go. Every board size has a file of fixed size slots, one value
+ * per byte after the state of the random generator, and a session keeps its
+ * slot until it ends. Spilling locks a session only to copy its values, the
+ * disk is written without holding the lock, and a session used meanwhile
+ * stays in memory. Moves never wait for the eviction.
+ */
+public class SessionStore {
+
+	// Largest value a slot holds, a byte stores value + 1
+	private static final int MAX_VALUE = 254;
+
+	// Milliseconds between two checks of the budget
+	private static final long PERIOD = 50;
+
+	private final ConcurrentMap<Long, Session> sessions;
+	private final AtomicLong nextId = new AtomicLong(1);
+
+	private final Path directory;
+	private final long budget;
+	private final ConcurrentMap<Integer, Slots> files;
+	private final ScheduledExecutorService evictor;
+
+	private final AtomicLong loadedBytes = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Constructor for SessionStore, starts the evicting thread
+	 * 
+	 * @param directory
+	 *            Directory for the spilled boards, created if needed
+	 * @param budget
+	 *            Bytes the boards in memory may take
+	 * @throws IOException
+	 *             If the directory can not be created
+	 */
+	public SessionStore(Path directory, long budget) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.budget = budget;
+		sessions = new ConcurrentHashMap<Long, Session>();
+		files = new ConcurrentHashMap<Integer, Slots>();
+		evictor = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "evictor");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		evictor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					evict();
+				} catch (UncheckedIOException e) {
+					System.err.println("Eviction failed: " + e.getCause());
+				}
+			}
+		}, PERIOD, PERIOD, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Start a session
+	 * 
+	 * @param size
+	 *            Length of one side of the board
+	 * @return New session
+	 */
+	public Session create(int size) {
+		Session session = new Session(nextId.getAndIncrement(), size, this);
+		sessions.put(session.getId(), session);
+		loadedBytes.addAndGet(memory(size));
+		return session;
+	}
+
+	/**
+	 * @param id
+	 *            Number of the session
+	 * @return Session, null if there is none with this number
+	 */
+	public Session get(long id) {
+		return sessions.get(id);
+	}
+
+	/**
+	 * End a session and free its slot on disk
+	 * 
+	 * @param id
+	 *            Number of the session
+	 */
+	public void remove(long id) {
+		Session session = sessions.remove(id);
+		if (session != null && session.remove()) {
+			loadedBytes.addAndGet(-memory(session.getLength()));
+		}
+	}
+
+	/**
+	 * @return Amount of sessions
+	 */
+	public int size() {
+		return sessions.size();
+	}
+
+	/**
+	 * @return Estimated bytes the boards in memory take
+	 */
+	public long getLoadedBytes() {
+		return loadedBytes.get();
+	}
+
+	/**
+	 * @return Accesses that found the board in memory
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return Accesses that loaded the board from disk
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return Boards spilled to disk
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Stop the evicting thread and close the files
+	 */
+	public void close() {
+		evictor.shutdownNow();
+		try {
+			evictor.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Slots slots : files.values()) {
+			try {
+				slots.channel.close();
+			} catch (IOException e) {
+				// Nothing left to lose
+			}
+		}
+	}
+
+	/**
+	 * Estimated bytes of a Board in memory: the values and the legal move
+	 * bookkeeping per cell, the lines of the move kernel and the objects
+	 * around them
+	 * 
+	 * @param size
+	 *            Length of one side of the board
+	 * @return Estimated bytes
+	 */
+	static long memory(int size) {
+		return 512 + 5L * size * size + 64L * size;
+	}
+
+	/**
+	 * @param cells
+	 *            Values of a board
+	 * @return Whether every value fits into a slot
+	 */
+	static boolean isStorable(int[][] cells) {
+		for (int[] row : cells) {
+			for (int value : row) {
+				if (value > MAX_VALUE) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	void hit() {
+		hits.increment();
+	}
+
+	void loaded(Session session) {
+		misses.increment();
+		loadedBytes.addAndGet(memory(session.getLength()));
+	}
+
+	/**
+	 * Slot for a board, only called by the evicting thread
+	 */
+	long allocate(int size) {
+		Slots slots = slots(size);
+		Long free = slots.free.poll();
+		return free != null ? free : slots.next++;
+	}
+
+	void free(int size, long slot) {
+		slots(size).free.add(slot);
+	}
+
+	/**
+	 * Write a board into its slot, only called by the evicting thread
+	 */
+	void write(int size, long slot, int[][] cells, long state) {
+		Slots slots = slots(size);
+		ByteBuffer buffer = ByteBuffer.allocate(slots.recordSize);
+		buffer.putLong(state);
+		for (int[] row : cells) {
+			for (int value : row) {
+				buffer.put((byte) (value + 1));
+			}
+		}
+		buffer.flip();
+
+		long position = slot * slots.recordSize;
+		try {
+			while (buffer.hasRemaining()) {
+				position += slots.channel.write(buffer, position);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Read a board from its slot
+	 * 
+	 * @return State of the random generator
+	 */
+	long read(int size, long slot, int[][] cells) {
+		Slots slots = slots(size);
+		ByteBuffer buffer = ByteBuffer.allocate(slots.recordSize);
+		long position = slot * slots.recordSize;
+		try {
+			while (buffer.hasRemaining()) {
+				int read = slots.channel.read(buffer, position);
+				if (read < 0) {
+					throw new IOException("Slot " + slot + " of size " + size
+							+ " is missing");
+				}
+				position += read;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		buffer.flip();
+		long state = buffer.getLong();
+		for (int[] row : cells) {
+			for (int column = 0; column < row.length; column++) {
+				row[column] = (buffer.get() & 0xFF) - 1;
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Spill the least recently used boards until a tenth of the budget is
+	 * free
+	 */
+	private void evict() {
+		if (loadedBytes.get() <= budget) {
+			return;
+		}
+
+		final List<Session> loaded = new ArrayList<Session>();
+		final List<Long> accessed = new ArrayList<Long>();
+		for (Session session : sessions.values()) {
+			if (session.isLoaded()) {
+				loaded.add(session);
+				accessed.add(session.getLastAccess());
+			}
+		}
+
+		// Sort on a copy of the access times, they change while sorting
+		List<Integer> order = new ArrayList<Integer>(loaded.size());
+		for (int i = 0; i < loaded.size(); i++) {
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer first, Integer second) {
+				return Long.compare(accessed.get(first), accessed.get(second));
+			}
+		});
+
+		long target = budget - budget / 10;
+		for (int i : order) {
+			if (loadedBytes.get() <= target) {
+				break;
+			}
+			Session session = loaded.get(i);
+			if (session.spill()) {
+				loadedBytes.addAndGet(-memory(session.getLength()));
+				evictions.increment();
+			}
+		}
+	}
+
+	private Slots slots(int size) {
+		Slots slots = files.get(size);
+		if (slots == null) {
+			synchronized (files) {
+				slots = files.get(size);
+				if (slots == null) {
+					slots = new Slots(directory.resolve("sessions-" + size
+							+ ".bin"), size);
+					files.put(size, slots);
+				}
+			}
+		}
+		return slots;
+	}
+
+	/**
+	 * File of slots for boards of one size
+	 */
+	private static class Slots {
+
+		final FileChannel channel;
+		final int recordSize;
+		final ConcurrentLinkedQueue<Long> free;
+
+		// Only the evicting thread takes new slots
+		long next;
+
+		Slots(Path file, int size) {
+			try {
+				channel = FileChannel.open(file, StandardOpenOption.CREATE,
+						StandardOpenOption.READ, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			recordSize = 8 + size * size;
+			free = new ConcurrentLinkedQueue<Long>();
+		}
+	}
+}
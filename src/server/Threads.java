@@ -0,0 +1,62 @@
+package server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors with a thread per task. Virtual threads are used when the
+ * runtime has them (Java 21 and later), found through reflection so the code
+ * still compiles and runs on older runtimes. Otherwise every task gets a
+ * platform daemon thread with a small stack.
+ */
+final class Threads {
+
+	// Stack of a platform thread, a connection needs little
+	private static final long STACK_SIZE = 256 * 1024;
+
+	private Threads() {
+	}
+
+	/**
+	 * @param name
+	 *            Prefix of the thread names
+	 * @return Executor starting a new thread for every task
+	 */
+	static ExecutorService perTask(String name) {
+		try {
+			Method method = Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(platform(name));
+		}
+	}
+
+	/**
+	 * @return Whether perTask uses virtual threads
+	 */
+	static boolean isVirtual() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	private static ThreadFactory platform(final String name) {
+		final AtomicInteger count = new AtomicInteger();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(null, task, name + "-"
+						+ count.incrementAndGet(), STACK_SIZE);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+}
@@ -0,0 +1,432 @@
+package simulation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ai.Expectimax;
+import ai.RandomPolicy;
+import ai.TranspositionTable;
+import models.BitBoard;
+import models.Board;
+import utilities.BoardFormatException;
+import utilities.Direction;
+import utilities.FileHandler;
+
+/**
+ * Headless analysis of every saved board in a directory tree, in either
+ * format FileHandler reads, without a JFileChooser. Every board gets a line
+ * of CSV or JSON with its score, legal moves, whether the game is over and a
+ * suggested move: the Expectimax choice for a 4x4 board, else the move with
+ * the best score and most empty cells after it.
+ * 
+ * The tree is walked on the calling thread, files are read and analysed in
+ * batches on a pool of threads, each with its own search. The search starts
+ * afresh for every board, so the output does not depend on the amount of
+ * threads or on which boards a thread analysed before. Lines are written
+ * in the order the files were found, at most WINDOW batches per thread are
+ * waiting to be written at once. A file that can not be read gets a line
+ * with its error, the other files are analysed anyway.
+ */
+public class BatchAnalyzer {
+
+	/**
+	 * Output formats
+	 */
+	public enum Format {
+		/** Header and one line of comma separated values per board */
+		CSV,
+		/** One JSON object per line */
+		JSON
+	}
+
+	// Files read and analysed by one task
+	private static final int BATCH = 64;
+
+	// Batches per thread analysed ahead of writing
+	private static final int WINDOW = 4;
+
+	// Entries of the transposition table of every thread, it is cleared for
+	// every board
+	private static final int TABLE_SIZE = 1 << 12;
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private final ExecutorService pool;
+	private final int threads;
+	private final ThreadLocal<Expectimax> searches;
+
+	/**
+	 * Constructor for BatchAnalyzer
+	 * 
+	 * @param threads
+	 *            Amount of threads reading and analysing files
+	 * @param depth
+	 *            Search depth of the suggested move on a 4x4 board
+	 */
+	public BatchAnalyzer(int threads, final int depth) {
+		this.threads = threads;
+		pool = Executors.newFixedThreadPool(threads);
+		searches = new ThreadLocal<Expectimax>() {
+			@Override
+			protected Expectimax initialValue() {
+				return new Expectimax(depth, 0, new TranspositionTable(
+						TABLE_SIZE), new RandomPolicy());
+			}
+		};
+	}
+
+	/**
+	 * Analyse every file in a directory tree
+	 * 
+	 * @param directory
+	 *            Root of the tree, or a single file
+	 * @param format
+	 *            Format of the lines
+	 * @param out
+	 *            Where the lines are written to
+	 * @return Amount of files analysed, including the ones that failed
+	 * @throws IOException
+	 *             If the output can not be written
+	 */
+	public long analyze(Path directory, final Format format, final Writer out)
+			throws IOException {
+		if (format == Format.CSV) {
+			out.write("path,length,score,legal,over,won,suggested,error\n");
+		}
+
+		final Deque<Future<String>> waiting = new ArrayDeque<Future<String>>();
+		final List<Path> batch = new ArrayList<Path>(BATCH);
+		final long[] files = new long[1];
+
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file,
+					BasicFileAttributes attributes) throws IOException {
+				if (attributes.isRegularFile()) {
+					batch.add(file);
+					files[0]++;
+					if (batch.size() == BATCH) {
+						submit(batch, format, waiting, out);
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e)
+					throws IOException {
+				// Reported in its place, like a file that can't be parsed
+				batch.add(file);
+				files[0]++;
+				if (batch.size() == BATCH) {
+					submit(batch, format, waiting, out);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		if (!batch.isEmpty()) {
+			submit(batch, format, waiting, out);
+		}
+
+		while (!waiting.isEmpty()) {
+			write(waiting.poll(), out);
+		}
+		out.flush();
+		return files[0];
+	}
+
+	/**
+	 * Stop the threads
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Analyse a batch of files on the pool, writing finished batches first
+	 * when too many are waiting
+	 */
+	private void submit(List<Path> batch, final Format format,
+			Deque<Future<String>> waiting, Writer out) throws IOException {
+		final Path[] paths = batch.toArray(new Path[batch.size()]);
+		batch.clear();
+
+		while (waiting.size() >= threads * WINDOW) {
+			write(waiting.poll(), out);
+		}
+		waiting.add(pool.submit(new Callable<String>() {
+			@Override
+			public String call() {
+				StringBuilder lines = new StringBuilder();
+				Expectimax search = searches.get();
+				for (Path path : paths) {
+					analyze(path, search).append(lines, format);
+				}
+				return lines.toString();
+			}
+		}));
+	}
+
+	private static void write(Future<String> lines, Writer out)
+			throws IOException {
+		try {
+			out.write(lines.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while analysing", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Analysis failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Read and analyse a single file
+	 * 
+	 * @param path
+	 *            File holding a board
+	 * @param search
+	 *            Search for the suggested move of a 4x4 board
+	 * @return Analysis, with the error if the file could not be read
+	 */
+	static Analysis analyze(Path path, Expectimax search) {
+		Analysis analysis = new Analysis(path);
+		int[][] cells;
+		try {
+			cells = FileHandler.boardRead(path, 0);
+		} catch (BoardFormatException e) {
+			analysis.error = e.getMessage();
+			return analysis;
+		} catch (IOException e) {
+			analysis.error = e.toString();
+			return analysis;
+		}
+
+		// Set() ignores boards smaller than 4x4
+		if (cells.length < 4) {
+			analysis.error = "board is " + cells.length + "x" + cells.length
+					+ ", expected at least 4x4";
+			return analysis;
+		}
+
+		Board board = new Board(cells.length, new Random(0));
+		board.set(cells);
+		analysis.length = board.getLength();
+		analysis.score = board.getScore();
+		analysis.legal = board.getLegalMoves();
+		analysis.won = board.getRules().isWon(analysis.score);
+
+		// Same end conditions as AppController
+		if (analysis.won || analysis.legal == 0) {
+			return analysis;
+		}
+		if (BitBoard.isPackable(cells)) {
+			search.getTable().clear();
+			analysis.suggested = search.best(BitBoard.pack(cells),
+					analysis.legal);
+		}
+		if (analysis.suggested == null) {
+			analysis.suggested = greedy(cells, analysis.legal);
+		}
+		return analysis;
+	}
+
+	/**
+	 * Legal move with the best score after it, then with the most empty
+	 * cells after it
+	 */
+	private static Direction greedy(int[][] cells, int legal) {
+		Direction best = null;
+		long bestValue = Long.MIN_VALUE;
+		Board board = new Board(cells.length, new Random(0));
+		for (Direction direction : DIRECTIONS) {
+			if ((legal & 1 << direction.ordinal()) == 0) {
+				continue;
+			}
+			board.set(cells);
+			board.move(direction);
+
+			long empty = 0;
+			for (int[] row : board.get()) {
+				for (int value : row) {
+					if (value == -1) {
+						empty++;
+					}
+				}
+			}
+			long value = (long) board.getScore() << 32 | empty;
+			if (value > bestValue) {
+				bestValue = value;
+				best = direction;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Result for one file
+	 */
+	static final class Analysis {
+
+		final Path path;
+		int length;
+		int score;
+		int legal;
+		boolean won;
+		Direction suggested;
+		String error;
+
+		Analysis(Path path) {
+			this.path = path;
+		}
+
+		/**
+		 * Add the line of this analysis
+		 */
+		void append(StringBuilder line, Format format) {
+			if (format == Format.CSV) {
+				csv(line);
+			} else {
+				json(line);
+			}
+			line.append('\n');
+		}
+
+		private void csv(StringBuilder line) {
+			quoted(line, path.toString(), '"');
+			if (error != null) {
+				line.append(",,,,,,,");
+				quoted(line, error, '"');
+				return;
+			}
+			line.append(',').append(length);
+			line.append(',').append(String.format(Locale.US, "%.1f",
+					score / 10.0));
+			line.append(',');
+			for (Direction direction : DIRECTIONS) {
+				if ((legal & 1 << direction.ordinal()) != 0) {
+					line.append(direction.toString().charAt(0));
+				}
+			}
+			line.append(',').append(legal == 0 || won);
+			line.append(',').append(won);
+			line.append(',');
+			if (suggested != null) {
+				line.append(suggested);
+			}
+			line.append(',');
+		}
+
+		private void json(StringBuilder line) {
+			line.append("{\"path\":");
+			quoted(line, path.toString(), '\\');
+			if (error != null) {
+				line.append(",\"error\":");
+				quoted(line, error, '\\');
+				line.append('}');
+				return;
+			}
+			line.append(",\"length\":").append(length);
+			line.append(",\"score\":").append(
+					String.format(Locale.US, "%.1f", score / 10.0));
+			line.append(",\"legal\":[");
+			boolean first = true;
+			for (Direction direction : DIRECTIONS) {
+				if ((legal & 1 << direction.ordinal()) != 0) {
+					line.append(first ? "\"" : ",\"").append(direction)
+							.append('"');
+					first = false;
+				}
+			}
+			line.append("],\"over\":").append(legal == 0 || won);
+			line.append(",\"won\":").append(won);
+			line.append(",\"suggested\":");
+			if (suggested != null) {
+				line.append('"').append(suggested).append('"');
+			} else {
+				line.append("null");
+			}
+			line.append('}');
+		}
+
+		/**
+		 * Add a string in double quotes, escaping quotes the CSV way (by
+		 * doubling them) or the JSON way (with a backslash)
+		 */
+		private static void quoted(StringBuilder line, String text,
+				char escape) {
+			line.append('"');
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (escape == '\\' && c < ' ') {
+					line.append(String.format("\\u%04x", (int) c));
+					continue;
+				}
+				if (c == '"' || escape == '\\' && c == '\\') {
+					line.append(escape);
+				}
+				line.append(c);
+			}
+			line.append('"');
+		}
+	}
+
+	/**
+	 * Analyse a directory tree from the command line, writing to standard
+	 * output and a summary to standard error
+	 * 
+	 * @param args
+	 *            Directory, format csv or json (csv), amount of threads (all
+	 *            cores) and search depth (Expectimax.DEPTH)
+	 * @throws IOException
+	 *             If the directory can not be walked or the output written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: BatchAnalyzer directory [csv|json]"
+					+ " [threads] [depth]");
+			System.exit(1);
+		}
+		Path directory = Paths.get(args[0]);
+		Format format = args.length > 1 ? Format.valueOf(args[1]
+				.toUpperCase(Locale.US)) : Format.CSV;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime
+				.getRuntime().availableProcessors();
+		int depth = args.length > 3 ? Integer.parseInt(args[3])
+				: Expectimax.DEPTH;
+
+		BatchAnalyzer analyzer = new BatchAnalyzer(threads, depth);
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out,
+				StandardCharsets.UTF_8), 1 << 16);
+		long start = System.nanoTime();
+		long files;
+		try {
+			files = analyzer.analyze(directory, format, out);
+		} finally {
+			analyzer.shutdown();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.err.printf("Files: %d in %.1f s, %.0f per minute%n", files,
+				seconds, files / seconds * 60);
+	}
+}
@@ -0,0 +1,161 @@
+package simulation;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+
+/**
+ * Aggregate results of a batch of simulated TEN! games
+ */
+public class SimulationResult {
+
+	private long games;
+	private long wins;
+	private long moves;
+	private long minMoves = Long.MAX_VALUE;
+	private long maxMoves;
+
+	// Amount of games per final score, index is the score
+	private long[] scores = new long[101];
+
+	/**
+	 * Add the result of a single game
+	 * 
+	 * @param score
+	 *            Final score, highestValue * 10 + secondHighestValue
+	 * @param won
+	 *            Whether the game was won
+	 * @param gameMoves
+	 *            Amount of moves that changed the board
+	 */
+	void add(int score, boolean won, long gameMoves) {
+		games++;
+		if (won) {
+			wins++;
+		}
+		moves += gameMoves;
+		minMoves = Math.min(minMoves, gameMoves);
+		maxMoves = Math.max(maxMoves, gameMoves);
+
+		if (score >= scores.length) {
+			scores = Arrays.copyOf(scores, score + 1);
+		}
+		scores[score]++;
+	}
+
+	/**
+	 * Add all results of another batch
+	 * 
+	 * @param other
+	 *            Results to add
+	 */
+	void add(SimulationResult other) {
+		games += other.games;
+		wins += other.wins;
+		moves += other.moves;
+		minMoves = Math.min(minMoves, other.minMoves);
+		maxMoves = Math.max(maxMoves, other.maxMoves);
+
+		if (other.scores.length > scores.length) {
+			scores = Arrays.copyOf(scores, other.scores.length);
+		}
+		for (int score = 0; score < other.scores.length; score++) {
+			scores[score] += other.scores[score];
+		}
+	}
+
+	/**
+	 * @return Amount of games played
+	 */
+	public long getGames() {
+		return games;
+	}
+
+	/**
+	 * @return Amount of games won
+	 */
+	public long getWins() {
+		return wins;
+	}
+
+	/**
+	 * @return Fraction of games won
+	 */
+	public double getWinRate() {
+		return games == 0 ? 0 : (double) wins / games;
+	}
+
+	/**
+	 * @return Total amount of moves over all games
+	 */
+	public long getMoves() {
+		return moves;
+	}
+
+	/**
+	 * @return Average amount of moves per game
+	 */
+	public double getMovesPerGame() {
+		return games == 0 ? 0 : (double) moves / games;
+	}
+
+	/**
+	 * @return Least amount of moves in a game, 0 without games
+	 */
+	public long getMinMoves() {
+		return games == 0 ? 0 : minMoves;
+	}
+
+	/**
+	 * @return Most amount of moves in a game
+	 */
+	public long getMaxMoves() {
+		return maxMoves;
+	}
+
+	/**
+	 * @param score
+	 *            Final score, highestValue * 10 + secondHighestValue
+	 * @return Amount of games that ended with the score
+	 */
+	public long getScoreCount(int score) {
+		return score >= 0 && score < scores.length ? scores[score] : 0;
+	}
+
+	/**
+	 * @return Average final score
+	 */
+	public double getMeanScore() {
+		long total = 0;
+		for (int score = 0; score < scores.length; score++) {
+			total += score * scores[score];
+		}
+		return games == 0 ? 0 : (double) total / games;
+	}
+
+	@Override
+	public String toString() {
+		DecimalFormat percentage = new DecimalFormat("0.00%");
+		DecimalFormat decimal = new DecimalFormat("#0.0");
+
+		StringBuilder text = new StringBuilder();
+		text.append("Games:          ").append(games).append('\n');
+		text.append("Wins:           ").append(wins).append(" (")
+				.append(percentage.format(getWinRate())).append(")\n");
+		text.append("Moves per game: ")
+				.append(decimal.format(getMovesPerGame())).append(" (min ")
+				.append(getMinMoves()).append(", max ").append(maxMoves)
+				.append(")\n");
+		text.append("Mean score:     ")
+				.append(decimal.format(getMeanScore() / 10)).append('\n');
+		text.append("Scores:\n");
+		for (int score = 0; score < scores.length; score++) {
+			if (scores[score] > 0) {
+				text.append("  ").append(decimal.format(score / 10.0))
+						.append('\t').append(scores[score]).append('\t')
+						.append(percentage.format((double) scores[score]
+								/ games)).append('\n');
+			}
+		}
+		return text.toString();
+	}
+}
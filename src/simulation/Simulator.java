@@ -0,0 +1,235 @@
+package simulation;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+import ai.Expectimax;
+import ai.MonteCarlo;
+import ai.MovePolicy;
+import ai.RandomPolicy;
+import models.Board;
+import models.RandomSpawnPolicy;
+import models.RuleSet;
+import utilities.Direction;
+import utilities.SeededRandom;
+
+/**
+ * Headless self-play: plays complete games of TEN! on models.Board without a
+ * View, split over all cores with a fork-join pool. Every batch of games gets
+ * its own Board, MovePolicy and SeededRandom, so workers share nothing.
+ */
+public class Simulator {
+
+	// Games played by one task without splitting any further
+	private static final long BATCH = 256;
+
+	private final ForkJoinPool pool;
+	private final RuleSet rules;
+	private final Supplier<? extends MovePolicy> policies;
+
+	/**
+	 * Constructor for Simulator
+	 * 
+	 * @param size
+	 *            Length of one side of the board
+	 * @param policies
+	 *            Creates the MovePolicy for each batch of games
+	 * @param threads
+	 *            Amount of worker threads
+	 */
+	public Simulator(int size, Supplier<? extends MovePolicy> policies,
+			int threads) {
+		this(RuleSet.DEFAULT.withLength(size), policies, threads);
+	}
+
+	/**
+	 * Constructor for Simulator playing a variant of TEN!
+	 * 
+	 * @param rules
+	 *            Rules of the games, including the length of one side
+	 * @param policies
+	 *            Creates the MovePolicy for each batch of games
+	 * @param threads
+	 *            Amount of worker threads
+	 */
+	public Simulator(RuleSet rules, Supplier<? extends MovePolicy> policies,
+			int threads) {
+		this.rules = rules;
+		this.policies = policies;
+		pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Play a number of games and collect their results. The same seed gives
+	 * the same results, regardless of the amount of threads
+	 * 
+	 * @param games
+	 *            Amount of games to play
+	 * @param seed
+	 *            Seed for the Random of every batch
+	 * @return Aggregate results
+	 */
+	public SimulationResult run(long games, long seed) {
+		return pool.invoke(new Games(0, games, new SplittableRandom(seed)));
+	}
+
+	/**
+	 * Stop the worker threads
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Play one game from a reset board until it is won or no move is left
+	 * 
+	 * @param board
+	 *            Board to play on
+	 * @param policy
+	 *            Chooses the moves
+	 * @param rand
+	 *            Random passed to the policy
+	 * @param result
+	 *            Result to add the game to
+	 */
+	static void play(Board board, MovePolicy policy, Random rand,
+			SimulationResult result) {
+		board.reset();
+		RuleSet rules = board.getRules();
+
+		long moves = 0;
+
+		// Directions that change the board, like enabled buttons
+		int allowed = board.getLegalMoves();
+
+		// Same end conditions as AppController
+		while (!rules.isWon(board.getScore()) && allowed != 0) {
+			Direction direction = policy.choose(board, allowed, rand);
+			if (board.move(direction)) {
+				moves++;
+				allowed = board.getLegalMoves();
+			} else {
+				// Policy ignored allowed, don't let it pick this again
+				allowed &= ~(1 << direction.ordinal());
+			}
+		}
+
+		result.add(board.getScore(), rules.isWon(board.getScore()), moves);
+	}
+
+	/**
+	 * Task playing a range of games, split in half until small enough
+	 */
+	@SuppressWarnings("serial")
+	private class Games extends RecursiveTask<SimulationResult> {
+
+		private final long from;
+		private final long to;
+		private final SplittableRandom random;
+
+		Games(long from, long to, SplittableRandom random) {
+			this.from = from;
+			this.to = to;
+			this.random = random;
+		}
+
+		@Override
+		protected SimulationResult compute() {
+			if (to - from <= BATCH) {
+				Random rand = new SeededRandom(random.nextLong());
+				Board board = new Board(rules, new RandomSpawnPolicy(
+						random.nextLong()));
+				MovePolicy policy = policies.get();
+
+				SimulationResult result = new SimulationResult();
+				for (long game = from; game < to; game++) {
+					play(board, policy, rand, result);
+				}
+				return result;
+			}
+
+			long middle = from + (to - from) / 2;
+			Games left = new Games(from, middle, random.split());
+			Games right = new Games(middle, to, random.split());
+			left.fork();
+
+			SimulationResult result = right.compute();
+			result.add(left.join());
+			return result;
+		}
+	}
+
+	/**
+	 * Create the policies for a policy name
+	 * 
+	 * @param name
+	 *            Name of the policy: random, expectimax or montecarlo
+	 * @return Supplier of new policies
+	 */
+	static Supplier<MovePolicy> policies(String name) {
+		if (name.equals("random")) {
+			return new Supplier<MovePolicy>() {
+				@Override
+				public MovePolicy get() {
+					return new RandomPolicy();
+				}
+			};
+		}
+		if (name.equals("expectimax")) {
+			return new Supplier<MovePolicy>() {
+				@Override
+				public MovePolicy get() {
+					return new Expectimax();
+				}
+			};
+		}
+		if (name.equals("montecarlo")) {
+			return new Supplier<MovePolicy>() {
+				@Override
+				public MovePolicy get() {
+					return new MonteCarlo();
+				}
+			};
+		}
+		throw new IllegalArgumentException("Unknown policy: " + name);
+	}
+
+	/**
+	 * Run a simulation from the command line. Arguments, all optional: games,
+	 * board size, policy, seed, threads, merge limit, target and spawn value
+	 */
+	public static void main(String[] args) {
+		long games = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		String policy = args.length > 2 ? args[2] : "random";
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : System
+				.nanoTime();
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime
+				.getRuntime().availableProcessors();
+
+		int mergeLimit = args.length > 5 ? Integer.parseInt(args[5])
+				: RuleSet.MERGE_LIMIT;
+		int target = args.length > 6 ? Integer.parseInt(args[6])
+				: RuleSet.TARGET;
+		int spawnValue = args.length > 7 ? Integer.parseInt(args[7])
+				: RuleSet.SPAWN_VALUE;
+		RuleSet rules = RuleSet.of(size, mergeLimit, target, spawnValue);
+
+		Simulator simulator = new Simulator(rules, policies(policy), threads);
+
+		long start = System.nanoTime();
+		SimulationResult result = simulator.run(games, seed);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		simulator.shutdown();
+
+		System.out.println("Rules:          " + rules);
+		System.out.println("Seed:           " + seed);
+		System.out.print(result);
+		System.out.printf("Time:           %.1f s, %.0f games/s%n", seconds,
+				result.getGames() / seconds);
+	}
+}
@@ -0,0 +1,80 @@
+package tablebase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * All reachable boards of one potential with their win probability: a file
+ * of canonical packed boards in ascending order and a file with a float for
+ * every board at the same index
+ */
+final class Layer {
+
+	private final MappedFile states;
+	private final MappedFile values;
+
+	private Layer(MappedFile states, MappedFile values) {
+		this.states = states;
+		this.values = values;
+	}
+
+	/**
+	 * Map a solved layer
+	 * 
+	 * @param directory
+	 *            Directory of the tablebase
+	 * @param potential
+	 *            Potential of the boards of the layer
+	 * @return Layer, null if the layer is not solved
+	 * @throws IOException
+	 *             If the files can not be mapped
+	 */
+	static Layer open(Path directory, int potential) throws IOException {
+		Path values = values(directory, potential);
+		if (!Files.exists(values)) {
+			return null;
+		}
+		return new Layer(MappedFile.open(states(directory, potential)),
+				MappedFile.open(values));
+	}
+
+	/**
+	 * @param canonical
+	 *            Canonical packed board of this layer
+	 * @return Win probability, NaN if the board is not reachable
+	 */
+	float value(long canonical) {
+		long index = states.search(canonical);
+		return index < 0 ? Float.NaN : values.getFloat(index);
+	}
+
+	/**
+	 * @return Amount of boards in the layer
+	 */
+	long size() {
+		return states.longs();
+	}
+
+	/**
+	 * @param directory
+	 *            Directory of the tablebase
+	 * @param potential
+	 *            Potential of the boards of the layer
+	 * @return File of the boards of the layer
+	 */
+	static Path states(Path directory, int potential) {
+		return directory.resolve("states-" + potential + ".bin");
+	}
+
+	/**
+	 * @param directory
+	 *            Directory of the tablebase
+	 * @param potential
+	 *            Potential of the boards of the layer
+	 * @return File of the win probabilities of the layer
+	 */
+	static Path values(Path directory, int potential) {
+		return directory.resolve("values-" + potential + ".bin");
+	}
+}
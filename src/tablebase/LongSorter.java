@@ -0,0 +1,196 @@
+package tablebase;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * External sort of longs without duplicates, for more longs than fit in
+ * memory. Longs are collected in a buffer, a full buffer is sorted and
+ * written to a run file next to the target. finish merges the runs into the
+ * target, a file of big-endian longs in ascending order.
+ */
+class LongSorter implements Closeable {
+
+	// Bytes buffered per open file
+	private static final int STREAM_BUFFER = 1 << 16;
+
+	private final Path target;
+
+	private final long[] buffer;
+	private int size;
+
+	private final List<Path> runs = new ArrayList<Path>();
+
+	/**
+	 * Constructor for LongSorter
+	 * 
+	 * @param target
+	 *            File to write the sorted longs to, runs are written next to
+	 *            it
+	 * @param bufferLongs
+	 *            Amount of longs sorted in memory at once
+	 */
+	LongSorter(Path target, int bufferLongs) {
+		this.target = target;
+		buffer = new long[bufferLongs];
+	}
+
+	/**
+	 * @param value
+	 *            Long to sort
+	 * @throws IOException
+	 *             If a run can not be written
+	 */
+	void add(long value) throws IOException {
+		if (size == buffer.length) {
+			spill();
+		}
+		buffer[size++] = value;
+	}
+
+	/**
+	 * Write all longs to the target, sorted and without duplicates
+	 * 
+	 * @return Amount of longs written
+	 * @throws IOException
+	 *             If a run can not be read or the target can not be written
+	 */
+	long finish() throws IOException {
+		if (runs.isEmpty()) {
+			int unique = sortBuffer();
+			try (DataOutputStream out = output(target)) {
+				for (int i = 0; i < unique; i++) {
+					out.writeLong(buffer[i]);
+				}
+			}
+			return unique;
+		}
+
+		spill();
+		return merge();
+	}
+
+	/**
+	 * Delete the run files
+	 */
+	@Override
+	public void close() throws IOException {
+		for (Path run : runs) {
+			Files.deleteIfExists(run);
+		}
+		runs.clear();
+	}
+
+	/**
+	 * Sort the buffer and move the unique longs to its front
+	 * 
+	 * @return Amount of unique longs
+	 */
+	private int sortBuffer() {
+		Arrays.parallelSort(buffer, 0, size);
+		int unique = 0;
+		for (int i = 0; i < size; i++) {
+			if (unique == 0 || buffer[i] != buffer[unique - 1]) {
+				buffer[unique++] = buffer[i];
+			}
+		}
+		return unique;
+	}
+
+	private void spill() throws IOException {
+		if (size == 0) {
+			return;
+		}
+		int unique = sortBuffer();
+		Path run = target.resolveSibling(target.getFileName() + ".run"
+				+ runs.size());
+		runs.add(run);
+		try (DataOutputStream out = output(run)) {
+			for (int i = 0; i < unique; i++) {
+				out.writeLong(buffer[i]);
+			}
+		}
+		size = 0;
+	}
+
+	/**
+	 * Merge the runs into the target, smallest first
+	 */
+	private long merge() throws IOException {
+		PriorityQueue<Run> queue = new PriorityQueue<Run>(runs.size());
+		long written = 0;
+		try (DataOutputStream out = output(target)) {
+			for (Path path : runs) {
+				Run run = new Run(path);
+				if (run.advance()) {
+					queue.add(run);
+				}
+			}
+
+			boolean first = true;
+			long last = 0;
+			while (!queue.isEmpty()) {
+				Run run = queue.poll();
+				if (first || run.current != last) {
+					out.writeLong(run.current);
+					last = run.current;
+					first = false;
+					written++;
+				}
+				if (run.advance()) {
+					queue.add(run);
+				}
+			}
+		} finally {
+			for (Run run : queue) {
+				run.in.close();
+			}
+		}
+		return written;
+	}
+
+	private static DataOutputStream output(Path path) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(path), STREAM_BUFFER));
+	}
+
+	/**
+	 * Sorted run being merged, closed once it is read
+	 */
+	private static final class Run implements Comparable<Run> {
+
+		final DataInputStream in;
+		long current;
+
+		Run(Path path) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(
+					Files.newInputStream(path), STREAM_BUFFER));
+		}
+
+		boolean advance() throws IOException {
+			try {
+				current = in.readLong();
+				return true;
+			} catch (EOFException e) {
+				in.close();
+				return false;
+			}
+		}
+
+		@Override
+		public int compareTo(Run other) {
+			return Long.compare(current, other.current);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package tablebase;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only file of big-endian longs or floats mapped into memory. A single
+ * mapping is limited to 2 GB, so larger files are mapped in segments. The
+ * operating system pages the file in and out, it never has to fit in memory.
+ * 
+ * Safe for use by many threads, every read is absolute.
+ */
+final class MappedFile {
+
+	// Bytes per segment, a multiple of every element size
+	private static final int SEGMENT_BITS = 30;
+	private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+	private final MappedByteBuffer[] segments;
+	private final long bytes;
+
+	private MappedFile(MappedByteBuffer[] segments, long bytes) {
+		this.segments = segments;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Map a whole file
+	 * 
+	 * @param path
+	 *            File to map
+	 * @return Mapped file
+	 * @throws IOException
+	 *             If the file can not be mapped
+	 */
+	static MappedFile open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			long bytes = channel.size();
+			int count = (int) ((bytes + SEGMENT_MASK) >>> SEGMENT_BITS);
+			MappedByteBuffer[] segments = new MappedByteBuffer[count];
+			for (int i = 0; i < count; i++) {
+				long position = (long) i << SEGMENT_BITS;
+				long size = Math.min(bytes - position, 1L << SEGMENT_BITS);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+						position, size);
+			}
+			// The mapping stays valid after the channel is closed
+			return new MappedFile(segments, bytes);
+		}
+	}
+
+	/**
+	 * @return Amount of longs in the file
+	 */
+	long longs() {
+		return bytes / 8;
+	}
+
+	/**
+	 * @return Amount of floats in the file
+	 */
+	long floats() {
+		return bytes / 4;
+	}
+
+	/**
+	 * @param index
+	 *            Index of the long, counting from 0
+	 * @return Long at the index
+	 */
+	long getLong(long index) {
+		long offset = index << 3;
+		return segments[(int) (offset >>> SEGMENT_BITS)]
+				.getLong((int) (offset & SEGMENT_MASK));
+	}
+
+	/**
+	 * @param index
+	 *            Index of the float, counting from 0
+	 * @return Float at the index
+	 */
+	float getFloat(long index) {
+		long offset = index << 2;
+		return segments[(int) (offset >>> SEGMENT_BITS)]
+				.getFloat((int) (offset & SEGMENT_MASK));
+	}
+
+	/**
+	 * Find a long in a file of ascending longs
+	 * 
+	 * @param key
+	 *            Long to find
+	 * @return Index of the long, -1 if it is not in the file
+	 */
+	long search(long key) {
+		long low = 0;
+		long high = longs() - 1;
+		while (low <= high) {
+			long middle = (low + high) >>> 1;
+			long value = getLong(middle);
+			if (value < key) {
+				low = middle + 1;
+			} else if (value > key) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,134 @@
+package tablebase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import models.BitBoard;
+
+/**
+ * Win probabilities under optimal play of every 4x4 board reachable from
+ * Board.reset(), as built by TablebaseBuilder. Boards are stored canonical,
+ * one of the eight rotations and mirror images, in layers by their potential
+ * (see BitBoard.potential). The layers are memory mapped, a lookup is a
+ * binary search in a single layer.
+ */
+public class Tablebase {
+
+	/**
+	 * Potential of a reset board, two zeroes
+	 */
+	public static final int FIRST_LAYER = 2;
+
+	static final String PROPERTIES = "tablebase.properties";
+	static final String GOAL = "goal";
+	static final String SOLVED = "solved";
+
+	private final int goal;
+
+	// Layer i holds the boards of potential i, null below FIRST_LAYER
+	private final List<Layer> layers;
+
+	private Tablebase(int goal, List<Layer> layers) {
+		this.goal = goal;
+		this.layers = layers;
+	}
+
+	/**
+	 * Open a solved tablebase
+	 * 
+	 * @param directory
+	 *            Directory the tablebase was built in
+	 * @return Tablebase
+	 * @throws IOException
+	 *             If the tablebase is not solved or can not be mapped
+	 */
+	public static Tablebase open(Path directory) throws IOException {
+		Properties properties = properties(directory);
+		if (!Boolean.parseBoolean(properties.getProperty(SOLVED))) {
+			throw new IOException("Tablebase in " + directory
+					+ " is not solved");
+		}
+
+		List<Layer> layers = new ArrayList<Layer>();
+		for (int potential = 0; potential < FIRST_LAYER; potential++) {
+			layers.add(null);
+		}
+		Layer layer;
+		while ((layer = Layer.open(directory, layers.size())) != null) {
+			layers.add(layer);
+		}
+		return new Tablebase(Integer.parseInt(properties.getProperty(GOAL)),
+				layers);
+	}
+
+	/**
+	 * @return Value a board needs to reach to win
+	 */
+	public int getGoal() {
+		return goal;
+	}
+
+	/**
+	 * @return Amount of boards, counting rotations and mirror images once
+	 */
+	public long size() {
+		long size = 0;
+		for (Layer layer : layers) {
+			if (layer != null) {
+				size += layer.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Win probability of a board when playing the best moves
+	 * 
+	 * @param packed
+	 *            Packed board
+	 * @return Probability between 0 and 1, NaN if the board can not be
+	 *         reached from a reset board
+	 */
+	public float winProbability(long packed) {
+		int potential = BitBoard.potential(packed);
+		if (potential >= layers.size() || layers.get(potential) == null) {
+			return Float.NaN;
+		}
+		return layers.get(potential).value(BitBoard.canonical(packed));
+	}
+
+	/**
+	 * Win probability of a board when playing the best moves
+	 * 
+	 * @param board
+	 *            Int[][] of 4x4 TEN! board, as returned by Board.get()
+	 * @return Probability between 0 and 1, NaN if the board can not be
+	 *         reached from a reset board
+	 */
+	public float winProbability(int[][] board) {
+		return winProbability(BitBoard.pack(board));
+	}
+
+	/**
+	 * @param directory
+	 *            Directory of the tablebase
+	 * @return Properties of the tablebase, empty if there are none yet
+	 * @throws IOException
+	 *             If the properties can not be read
+	 */
+	static Properties properties(Path directory) throws IOException {
+		Properties properties = new Properties();
+		Path path = directory.resolve(PROPERTIES);
+		if (Files.exists(path)) {
+			try (InputStream in = Files.newInputStream(path)) {
+				properties.load(in);
+			}
+		}
+		return properties;
+	}
+}
@@ -0,0 +1,386 @@
+package tablebase;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import models.BitBoard;
+import utilities.Direction;
+
+/**
+ * Offline tool that builds a Tablebase of every 4x4 board reachable from
+ * Board.reset(), with the probability to win it when playing the best moves.
+ * 
+ * Every move raises the potential of a board by exactly 1 (see
+ * BitBoard.potential), so the boards fall apart in layers and the boards
+ * after a move are all in the next layer. The builder works in two passes:
+ * 
+ * Enumerate: starting with the reset boards, every layer is expanded into
+ * the next with every move and every spawn Board can make. The boards are
+ * canonical, rotations and mirror images are the same board, and are sorted
+ * and stripped of duplicates with an external sort, so a layer may be larger
+ * than memory. Won boards are not expanded. Enumeration stops at the first
+ * empty layer.
+ * 
+ * Solve: from the last layer back to the first, the value of a board is 1
+ * when won, 0 when no move is left, else the best expected value over the
+ * moves, with the spawns weighted like Board picks them. Layers are solved
+ * in parallel ranges, reading the next layer through its memory map.
+ * 
+ * Every file is written under a temporary name and renamed when complete. An
+ * interrupted build started again with the same directory continues with the
+ * first missing file.
+ */
+public class TablebaseBuilder {
+
+	// Boards solved by one task without splitting any further
+	private static final long CHUNK = 1 << 16;
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private final Path directory;
+	private final int goal;
+	private final int bufferLongs;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Constructor for TablebaseBuilder
+	 * 
+	 * @param directory
+	 *            Directory to build in, created if needed
+	 * @param goal
+	 *            Value a board needs to reach to win, 10 in TEN!
+	 * @param memory
+	 *            Bytes to sort in memory at once
+	 * @param threads
+	 *            Amount of threads solving layers
+	 */
+	public TablebaseBuilder(Path directory, int goal, long memory, int threads) {
+		if (goal < 1 || goal > BitBoard.MAX_VALUE) {
+			throw new IllegalArgumentException("Goal must be between 1 and "
+					+ BitBoard.MAX_VALUE);
+		}
+		this.directory = directory;
+		this.goal = goal;
+		bufferLongs = (int) Math.max(1024,
+				Math.min(memory / 8, Integer.MAX_VALUE - 8));
+		pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Enumerate and solve every layer that is not done yet
+	 * 
+	 * @return Solved tablebase
+	 * @throws IOException
+	 *             If a file can not be read or written, or the directory
+	 *             holds a tablebase for another goal
+	 */
+	public Tablebase build() throws IOException {
+		Files.createDirectories(directory);
+		Properties properties = Tablebase.properties(directory);
+		String built = properties.getProperty(Tablebase.GOAL);
+		if (built != null && Integer.parseInt(built) != goal) {
+			throw new IOException("Tablebase in " + directory
+					+ " is built for goal " + built);
+		}
+		properties.setProperty(Tablebase.GOAL, Integer.toString(goal));
+		store(properties);
+
+		if (!Boolean.parseBoolean(properties.getProperty(Tablebase.SOLVED))) {
+			solve(enumerate());
+			properties.setProperty(Tablebase.SOLVED, "true");
+			store(properties);
+		}
+		return Tablebase.open(directory);
+	}
+
+	/**
+	 * Stop the worker threads
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Write every layer not written yet
+	 * 
+	 * @return Potential of the last layer that is not empty
+	 */
+	private int enumerate() throws IOException {
+		int potential = Tablebase.FIRST_LAYER;
+		if (!Files.exists(Layer.states(directory, potential))) {
+			writeResetBoards(Layer.states(directory, potential));
+		}
+
+		while (true) {
+			Path next = Layer.states(directory, potential + 1);
+			if (!Files.exists(next)) {
+				long size = expand(potential, next);
+				System.out.println("Layer " + (potential + 1) + ": " + size
+						+ " boards");
+			}
+			if (Files.size(next) == 0) {
+				return potential;
+			}
+			potential++;
+		}
+	}
+
+	/**
+	 * Every placement of two zeroes on an empty board, as Board.reset() does
+	 */
+	private void writeResetBoards(Path target) throws IOException {
+		Path temporary = temporary(target);
+		try (LongSorter sorter = new LongSorter(temporary, bufferLongs)) {
+			int cells = BitBoard.LENGTH * BitBoard.LENGTH;
+			for (int first = 0; first < cells; first++) {
+				for (int second = first + 1; second < cells; second++) {
+					// A zero is stored as 1
+					sorter.add(BitBoard.canonical(1L << 4 * first
+							| 1L << 4 * second));
+				}
+			}
+			sorter.finish();
+		}
+		complete(temporary, target);
+	}
+
+	/**
+	 * Write the boards after every move and spawn of the boards of a layer
+	 * 
+	 * @return Amount of boards written
+	 */
+	private long expand(int potential, Path target) throws IOException {
+		MappedFile states = MappedFile.open(Layer.states(directory, potential));
+		Path temporary = temporary(target);
+		long size;
+		try (LongSorter sorter = new LongSorter(temporary, bufferLongs)) {
+			for (long i = 0; i < states.longs(); i++) {
+				long packed = states.getLong(i);
+				if (isWon(packed)) {
+					continue;
+				}
+				for (Direction direction : DIRECTIONS) {
+					long moved = BitBoard.move(packed, direction);
+					if (moved == packed) {
+						continue;
+					}
+					int changes = BitBoard.changes(packed, direction);
+					for (int line = 0; line < BitBoard.LENGTH; line++) {
+						if ((changes >>> 8 * line & 0xFF) != 0) {
+							sorter.add(BitBoard.canonical(BitBoard.spawn(
+									moved, direction, line)));
+						}
+					}
+				}
+			}
+			size = sorter.finish();
+		}
+		complete(temporary, target);
+		return size;
+	}
+
+	/**
+	 * Write the values of every layer not solved yet, last layer first
+	 */
+	private void solve(int last) throws IOException {
+		for (int potential = last; potential >= Tablebase.FIRST_LAYER;
+				potential--) {
+			Path target = Layer.values(directory, potential);
+			if (Files.exists(target)) {
+				continue;
+			}
+
+			// The layer after the last is empty, nothing to look up there
+			Layer next = potential == last ? null : Layer.open(directory,
+					potential + 1);
+			MappedFile states = MappedFile.open(Layer.states(directory,
+					potential));
+
+			Path temporary = temporary(target);
+			try (FileChannel out = FileChannel.open(temporary,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				pool.invoke(new Solve(states, next, out, 0, states.longs()));
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			complete(temporary, target);
+			System.out.println("Solved layer " + potential);
+		}
+	}
+
+	/**
+	 * Win probability of a board, given the values of the next layer
+	 */
+	private float value(long packed, Layer next) {
+		if (isWon(packed)) {
+			return 1;
+		}
+
+		// No move left is a lost game
+		double best = 0;
+		for (Direction direction : DIRECTIONS) {
+			long moved = BitBoard.move(packed, direction);
+			if (moved == packed) {
+				continue;
+			}
+
+			// Every change of a line is an equally likely spawn
+			int changes = BitBoard.changes(packed, direction);
+			double sum = 0;
+			for (int line = 0; line < BitBoard.LENGTH; line++) {
+				int weight = changes >>> 8 * line & 0xFF;
+				if (weight == 0) {
+					continue;
+				}
+				float value = next.value(BitBoard.canonical(BitBoard.spawn(
+						moved, direction, line)));
+				if (Float.isNaN(value)) {
+					throw new IllegalStateException("Board "
+							+ Long.toHexString(packed)
+							+ " leads to a board missing in the next layer");
+				}
+				sum += weight * value;
+			}
+			best = Math.max(best, sum / BitBoard.total(changes));
+		}
+		return (float) best;
+	}
+
+	private boolean isWon(long packed) {
+		for (int shift = 0; shift < 64; shift += 4) {
+			if ((int) (packed >>> shift & 0xF) - 1 >= goal) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void store(Properties properties) throws IOException {
+		Path target = directory.resolve(Tablebase.PROPERTIES);
+		Path temporary = temporary(target);
+		try (OutputStream out = Files.newOutputStream(temporary)) {
+			properties.store(out, "TEN! tablebase");
+		}
+		complete(temporary, target);
+	}
+
+	private static Path temporary(Path target) {
+		return target.resolveSibling(target.getFileName() + ".tmp");
+	}
+
+	private static void complete(Path temporary, Path target)
+			throws IOException {
+		Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Task solving a range of boards of a layer, split in half until small
+	 * enough. Every range writes its own part of the values file
+	 */
+	@SuppressWarnings("serial")
+	private class Solve extends RecursiveAction {
+
+		private final MappedFile states;
+		private final Layer next;
+		private final FileChannel out;
+		private final long from;
+		private final long to;
+
+		Solve(MappedFile states, Layer next, FileChannel out, long from,
+				long to) {
+			this.states = states;
+			this.next = next;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > CHUNK) {
+				long middle = (from + to) >>> 1;
+				invokeAll(new Solve(states, next, out, from, middle),
+						new Solve(states, next, out, middle, to));
+				return;
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) (to - from) * 4);
+			for (long i = from; i < to; i++) {
+				buffer.putFloat(value(states.getLong(i), next));
+			}
+			buffer.flip();
+
+			long position = from * 4;
+			try {
+				while (buffer.hasRemaining()) {
+					position += out.write(buffer, position);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Build a tablebase, or continue an interrupted build, and print the win
+	 * probability of a reset board
+	 * 
+	 * @param args
+	 *            Directory, goal (10), memory in MB to sort at once (256) and
+	 *            amount of threads (all cores)
+	 * @throws IOException
+	 *             If a file can not be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: TablebaseBuilder directory [goal]"
+					+ " [memoryMB] [threads]");
+			System.exit(1);
+		}
+		Path directory = Paths.get(args[0]);
+		int goal = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		long memory = (args.length > 2 ? Long.parseLong(args[2]) : 256) << 20;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime
+				.getRuntime().availableProcessors();
+
+		TablebaseBuilder builder = new TablebaseBuilder(directory, goal,
+				memory, threads);
+		long start = System.nanoTime();
+		Tablebase tablebase;
+		try {
+			tablebase = builder.build();
+		} finally {
+			builder.shutdown();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		// Both zeroes of a reset board are equally likely on any empty cell
+		double sum = 0;
+		int boards = 0;
+		int cells = BitBoard.LENGTH * BitBoard.LENGTH;
+		for (int first = 0; first < cells; first++) {
+			for (int second = first + 1; second < cells; second++) {
+				sum += tablebase.winProbability(1L << 4 * first
+						| 1L << 4 * second);
+				boards++;
+			}
+		}
+
+		System.out.println("Boards:          " + tablebase.size());
+		System.out.printf("Win probability: %.6f%n", sum / boards);
+		System.out.printf("Time:            %.1f s%n", seconds);
+	}
+}
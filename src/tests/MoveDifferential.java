@@ -0,0 +1,335 @@
+package tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import models.Board;
+import models.RandomSpawnPolicy;
+import models.SpawnPolicy;
+import utilities.Direction;
+
+/**
+ * Differential check of Board.move against the original implementation,
+ * which turned the whole board so every move went east and bubbled the values
+ * along each line. Both boards play the same seeded random games; after every
+ * move the cells, the changes of every line, the placed zero and the score
+ * must be the same.
+ * 
+ * Sizes include the packed 4x4 path, the line kernel and the lines moved in
+ * parallel from Board.PARALLEL_LENGTH up. Exits with status 1 on the first
+ * mismatch.
+ * 
+ * Usage:
+ * 
+ * <pre>
+ * MoveDifferential [games] [max size] [seed]
+ * </pre>
+ */
+public class MoveDifferential {
+
+	// Moves per game on a board below Board.PARALLEL_LENGTH
+	private static final int MOVES = 200;
+
+	// Moves per game on a parallel board, the original needs n^3 per move
+	private static final int PARALLEL_MOVES = 10;
+
+	// One in this many games is played on a parallel board
+	private static final int PARALLEL_GAMES = 500;
+
+	private MoveDifferential() {
+	}
+
+	/**
+	 * The original Board, as it moved before the move kernel: rotate or
+	 * mirror, move east, turn back
+	 */
+	private static class ReferenceBoard {
+
+		private final Random rand;
+
+		private final int[][] board;
+
+		// Changes per line of the last move, counted like the original
+		// 'changed lines' list
+		private final int[] lineChanges;
+
+		ReferenceBoard(int[][] board, Random rand) {
+			this.board = board;
+			this.rand = rand;
+			lineChanges = new int[board.length];
+		}
+
+		void reset() {
+			for (int row = 0; row < board.length; row++) {
+				Arrays.fill(board[row], -1);
+			}
+
+			int zeroes = 0;
+			while (zeroes < 2) {
+				int column = rand.nextInt(board.length);
+				int row = rand.nextInt(board.length);
+				if (board[row][column] == -1) {
+					board[row][column] = 0;
+					zeroes++;
+				}
+			}
+		}
+
+		boolean move(Direction direction) {
+			boolean hasChanged = false;
+
+			switch (direction) {
+			case EAST:
+				hasChanged = move();
+				break;
+			case WEST:
+				mirror();
+				hasChanged = move();
+				mirror();
+				break;
+			case SOUTH:
+				rotateCounterClockwise();
+				hasChanged = move();
+				rotateClockwise();
+				break;
+			case NORTH:
+				rotateClockwise();
+				hasChanged = move();
+				rotateCounterClockwise();
+				break;
+			default:
+				break;
+			}
+
+			return hasChanged;
+		}
+
+		private boolean move() {
+			List<Integer> changedLines = new ArrayList<Integer>();
+			Arrays.fill(lineChanges, 0);
+
+			for (int line = 0; line < board.length; line++) {
+				int merges = 0;
+				for (int r = 0; r <= board[line].length - 2; r++) {
+					for (int p = board[line].length - 2; p >= r; p--) {
+						if (board[line][p] != -1) {
+							if (board[line][p + 1] == -1) {
+								board[line][p + 1] = board[line][p];
+								board[line][p] = -1;
+								changedLines.add(line);
+							} else if (board[line][p + 1] == board[line][p]
+									&& merges < 2) {
+								board[line][p + 1] = board[line][p] + 1;
+								board[line][p] = -1;
+								merges++;
+								changedLines.add(line);
+							}
+						}
+					}
+				}
+			}
+
+			for (int i = 0; i < changedLines.size(); i++) {
+				lineChanges[changedLines.get(i)]++;
+			}
+
+			if (changedLines.isEmpty()) {
+				return false;
+			}
+			int line = changedLines.get(rand.nextInt(changedLines.size()));
+			board[line][0] = 0;
+			return true;
+		}
+
+		private void mirror() {
+			for (int line = 0; line < board.length; line++) {
+				for (int i = 0; i < board[line].length / 2; i++) {
+					int temp = board[line][i];
+					board[line][i] = board[line][board[line].length - 1 - i];
+					board[line][board[line].length - 1 - i] = temp;
+				}
+			}
+		}
+
+		private void rotateClockwise() {
+			int n = board.length;
+			for (int row = 0; row < n / 2; row++) {
+				for (int column = row; column < n - row - 1; column++) {
+					int temp = board[row][column];
+					board[row][column] = board[n - column - 1][row];
+					board[n - column - 1][row] = board[n - row - 1][n - column
+							- 1];
+					board[n - row - 1][n - column - 1] = board[column][n - row
+							- 1];
+					board[column][n - row - 1] = temp;
+				}
+			}
+		}
+
+		private void rotateCounterClockwise() {
+			int n = board.length;
+			for (int row = 0; row < n / 2; row++) {
+				for (int column = row; column < n - row - 1; column++) {
+					int temp = board[row][column];
+					board[row][column] = board[column][n - row - 1];
+					board[column][n - row - 1] = board[n - row - 1][n - column
+							- 1];
+					board[n - row - 1][n - column - 1] = board[n - column - 1][row];
+					board[n - column - 1][row] = temp;
+				}
+			}
+		}
+
+		/**
+		 * Score like the original Score.update
+		 */
+		int score() {
+			int highest = 0;
+			int secondHighest = 0;
+			for (int row = 0; row < board.length; row++) {
+				for (int col = 0; col < board[row].length; col++) {
+					if (highest < board[row][col]) {
+						secondHighest = highest;
+						highest = board[row][col];
+					} else if (secondHighest < board[row][col]) {
+						secondHighest = board[row][col];
+					}
+				}
+			}
+			if (highest > 9) {
+				secondHighest = 0;
+			}
+			return highest * 10 + secondHighest;
+		}
+	}
+
+	/**
+	 * Random spawns that remember the changes of every line Board passed
+	 */
+	private static class RecordingSpawnPolicy implements SpawnPolicy {
+
+		private final RandomSpawnPolicy random;
+
+		private int[] lineChanges;
+
+		RecordingSpawnPolicy(Random rand) {
+			random = new RandomSpawnPolicy(rand);
+		}
+
+		@Override
+		public int resetCell(int[] cells, int length) {
+			return random.resetCell(cells, length);
+		}
+
+		@Override
+		public int spawnLine(int[] cells, int length, Direction direction,
+				int[] lineChanges) {
+			this.lineChanges = Arrays.copyOf(lineChanges, length);
+			return random.spawnLine(cells, length, direction, lineChanges);
+		}
+
+		/**
+		 * @return Changes of every line of the last move, null when it
+		 *         changed nothing
+		 */
+		int[] takeLineChanges() {
+			int[] taken = lineChanges;
+			lineChanges = null;
+			return taken;
+		}
+	}
+
+	/**
+	 * Play one game on both boards
+	 * 
+	 * @return Moves played, or -1 after printing a mismatch
+	 */
+	private static int play(Random game, int size, int moves) {
+		long seed = game.nextLong();
+		RecordingSpawnPolicy policy = new RecordingSpawnPolicy(new Random(seed));
+		Board board = new Board(size, policy);
+		ReferenceBoard reference = new ReferenceBoard(new int[size][size],
+				new Random(seed));
+
+		if (game.nextInt(3) == 0) {
+			board.reset();
+			reference.reset();
+		} else {
+			// Random start with low values, sometimes above the 4x4 nibbles
+			int highest = game.nextInt(18);
+			double fill = game.nextDouble();
+			int[][] cells = new int[size][size];
+			for (int row = 0; row < size; row++) {
+				for (int column = 0; column < size; column++) {
+					cells[row][column] = game.nextDouble() < fill ? game
+							.nextInt(highest + 1) : -1;
+					reference.board[row][column] = cells[row][column];
+				}
+			}
+			board.set(cells);
+		}
+
+		for (int move = 0; move < moves; move++) {
+			Direction direction = Direction.values()[game.nextInt(4)];
+			boolean changed = board.move(direction);
+			boolean expected = reference.move(direction);
+			int[] lineChanges = policy.takeLineChanges();
+
+			String mismatch = null;
+			if (changed != expected) {
+				mismatch = "changed " + changed + ", expected " + expected;
+			} else if (!Arrays.deepEquals(board.get(), reference.board)) {
+				mismatch = "cells differ";
+			} else if (changed
+					&& !Arrays.equals(lineChanges, reference.lineChanges)) {
+				mismatch = "line changes " + Arrays.toString(lineChanges)
+						+ ", expected "
+						+ Arrays.toString(reference.lineChanges);
+			} else if (board.getScore() != reference.score()) {
+				mismatch = "score " + board.getScore() + ", expected "
+						+ reference.score();
+			}
+
+			if (mismatch != null) {
+				System.out.println("Mismatch on a " + size + "x" + size
+						+ " board, move " + move + " " + direction + ": "
+						+ mismatch);
+				if (size <= 16) {
+					System.out.println("Board:     "
+							+ Arrays.deepToString(board.get()));
+					System.out.println("Reference: "
+							+ Arrays.deepToString(reference.board));
+				}
+				return -1;
+			}
+		}
+		return moves;
+	}
+
+	public static void main(String[] args) {
+		long games = args.length > 0 ? Long.parseLong(args[0]) : 5000;
+		int maxSize = args.length > 1 ? Math.max(4, Integer.parseInt(args[1]))
+				: 12;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 20140622;
+
+		Random random = new Random(seed);
+		long moves = 0;
+		for (long game = 0; game < games; game++) {
+			int played;
+			if (game % PARALLEL_GAMES == PARALLEL_GAMES - 1) {
+				played = play(random, Board.PARALLEL_LENGTH + random.nextInt(8),
+						PARALLEL_MOVES);
+			} else {
+				played = play(random, 4 + random.nextInt(maxSize - 3), MOVES);
+			}
+			if (played < 0) {
+				System.out.println("Seed " + seed + ", game " + game);
+				System.exit(1);
+			}
+			moves += played;
+		}
+		System.out.println("ok " + games + " games, " + moves + " moves");
+	}
+}
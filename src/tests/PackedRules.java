@@ -0,0 +1,138 @@
+package tests;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import ai.Expectimax;
+import ai.MonteCarlo;
+import ai.MovePolicy;
+import models.BitBoard;
+import models.Board;
+import models.RuleSet;
+import models.ScriptedSpawnPolicy;
+import utilities.Direction;
+
+/**
+ * Check of the rules packed boards are played by. A packed cell holds at
+ * most BitBoard.MAX_VALUE + 1, so two of those must never merge on a packed
+ * board: rules with a higher target are refused by BitBoard and played
+ * unpacked by the searches.
+ * 
+ * Exits with status 1 on the first failed check.
+ * 
+ * Usage:
+ * 
+ * <pre>
+ * PackedRules
+ * </pre>
+ */
+public class PackedRules {
+
+	// Target above what a packed cell holds, spawning the highest value that
+	// still packs
+	private static final RuleSet HIGH = RuleSet.of(BitBoard.LENGTH,
+			RuleSet.MERGE_LIMIT, 20, BitBoard.MAX_VALUE);
+
+	// Highest target packed boards can be played to
+	private static final RuleSet PACKED = RuleSet.of(BitBoard.LENGTH,
+			RuleSet.MERGE_LIMIT, BitBoard.MAX_VALUE, RuleSet.SPAWN_VALUE);
+
+	private static int failures;
+
+	private PackedRules() {
+	}
+
+	private static void check(boolean passed, String description) {
+		if (!passed) {
+			System.out.println("Failed: " + description);
+			failures++;
+		}
+	}
+
+	/**
+	 * A line of two MAX_VALUE + 1 values, [14, 14, -1, -1]
+	 */
+	private static int[][] highPair() {
+		int[][] cells = new int[BitBoard.LENGTH][BitBoard.LENGTH];
+		for (int[] row : cells) {
+			Arrays.fill(row, -1);
+		}
+		cells[0][0] = BitBoard.MAX_VALUE + 1;
+		cells[0][1] = BitBoard.MAX_VALUE + 1;
+		return cells;
+	}
+
+	private static void packedMoves() {
+		check(!BitBoard.isPackable(HIGH), HIGH + " is not packable");
+		check(BitBoard.isPackable(PACKED), PACKED + " is packable");
+		check(!BitBoard.isPackable(RuleSet.DEFAULT.withLength(5)),
+				"5x5 rules are not packable");
+
+		// Both nibbles 0xF, the line [14, 14] that used to merge into an
+		// empty cell
+		long pair = 0xFFL;
+		try {
+			BitBoard.move(pair, Direction.EAST, HIGH);
+			check(false, "moving [14, 14] by " + HIGH + " is refused");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+
+		// One below still merges on a packed board
+		long below = BitBoard.set(BitBoard.set(0, 0, 0,
+				BitBoard.MAX_VALUE - 1), 0, 1, BitBoard.MAX_VALUE - 1);
+		long moved = BitBoard.move(below, Direction.EAST, PACKED);
+		check(BitBoard.get(moved, 0, 3) == BitBoard.MAX_VALUE
+				&& BitBoard.score(moved, PACKED) == PACKED
+						.getWinningScore(), "[12, 12] merges into 13 by "
+				+ PACKED);
+	}
+
+	private static void boardMoves() {
+		Board board = new Board(HIGH, new ScriptedSpawnPolicy(0));
+		board.set(highPair());
+		check(board.move(Direction.EAST), "[14, 14] moves east on a Board");
+		int[][] cells = board.get();
+		check(cells[0][3] == BitBoard.MAX_VALUE + 2 && cells[0][2] == -1,
+				"[14, 14] merges into 15 on a Board");
+		check(board.getScore() == HIGH.score(BitBoard.MAX_VALUE + 2,
+				HIGH.getSpawnValue()), "score of a 15 next to the spawned value");
+	}
+
+	private static void searches() {
+		MovePolicy[] policies = {
+				new Expectimax(),
+				new MonteCarlo(ForkJoinPool.commonPool(), 64, 0, 200) };
+		for (MovePolicy policy : policies) {
+			// Two values that merge into MAX_VALUE + 1 and then further
+			int[][] start = highPair();
+			start[0][0] = BitBoard.MAX_VALUE;
+			start[0][1] = BitBoard.MAX_VALUE;
+			start[1][0] = BitBoard.MAX_VALUE;
+
+			Board board = new Board(HIGH, new ScriptedSpawnPolicy(0, 5, 10,
+					15));
+			board.set(start);
+			String name = policy.getClass().getSimpleName();
+			try {
+				Direction direction = policy.choose(board,
+						board.getLegalMoves(), new Random(1));
+				check(board.isLegal(direction), name + " picks a legal move");
+			} catch (RuntimeException e) {
+				check(false, name + " searches by " + HIGH + ": " + e);
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		packedMoves();
+		boardMoves();
+		searches();
+
+		if (failures > 0) {
+			System.exit(1);
+		}
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,193 @@
+package utilities;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file format for TEN! boards: a header of the magic bytes "TEN!", a
+ * version byte and the length of one side as int, followed by one byte per
+ * cell, row by row. A cell stores its value + 1, so an empty cell (-1) is 0.
+ * 
+ * Files are read and written through a FileChannel, big files through a
+ * memory-mapped buffer. Rows are copied in bulk, no object is created per
+ * cell.
+ */
+public final class BinaryFormat {
+
+	/**
+	 * File name extension of boards stored in this format
+	 */
+	public static final String EXTENSION = ".ten";
+
+	/**
+	 * Version written in the header
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Lowest value that can be stored, representing an empty cell
+	 */
+	public static final int MIN_VALUE = -1;
+
+	/**
+	 * Highest value that can be stored
+	 */
+	public static final int MAX_VALUE = 254;
+
+	private static final byte[] MAGIC = { 'T', 'E', 'N', '!' };
+
+	private static final int HEADER = MAGIC.length + 1 + 4;
+
+	// Files at least this big are memory mapped instead of read at once
+	private static final long MAP_THRESHOLD = 1 << 20;
+
+	private BinaryFormat() {
+	}
+
+	/**
+	 * Whether a file starts with the header of this format
+	 * 
+	 * @param path
+	 *            File to check
+	 * @return Whether the file is a binary board, of any version
+	 * @throws IOException
+	 *             If the file can not be read
+	 */
+	public static boolean isBinary(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+			while (magic.hasRemaining() && channel.read(magic) >= 0) {
+			}
+			if (magic.hasRemaining()) {
+				return false;
+			}
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (magic.get(i) != MAGIC[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Write a board to a file, replacing its content
+	 * 
+	 * @param board
+	 *            Int[][] of square TEN! board with values between MIN_VALUE
+	 *            and MAX_VALUE
+	 * @param path
+	 *            File to write
+	 * @throws IOException
+	 *             If the board can not be stored or the file can not be
+	 *             written
+	 */
+	public static void write(int[][] board, Path path) throws IOException {
+		// Check everything before the file is truncated
+		int length = board.length;
+		for (int r = 0; r < length; r++) {
+			if (board[r].length != length) {
+				throw new IOException("Board is not square on row: "
+						+ (r + 1));
+			}
+			for (int c = 0; c < length; c++) {
+				if (board[r][c] < MIN_VALUE || board[r][c] > MAX_VALUE) {
+					throw new IOException("Value " + board[r][c] + " on row: "
+							+ (r + 1) + " cell: " + (c + 1)
+							+ " can not be stored");
+				}
+			}
+		}
+
+		long size = HEADER + (long) length * length;
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer;
+			if (size >= MAP_THRESHOLD) {
+				buffer = channel.map(MapMode.READ_WRITE, 0, size);
+			} else {
+				buffer = ByteBuffer.allocate((int) size);
+			}
+
+			buffer.put(MAGIC).put((byte) VERSION).putInt(length);
+			byte[] row = new byte[length];
+			for (int r = 0; r < length; r++) {
+				for (int c = 0; c < length; c++) {
+					row[c] = (byte) (board[r][c] + 1);
+				}
+				buffer.put(row);
+			}
+
+			// A mapped buffer is the file already
+			if (size < MAP_THRESHOLD) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read a board from a file
+	 * 
+	 * @param path
+	 *            File in this format
+	 * @return Int[][] for TEN! board
+	 * @throws IOException
+	 *             If the file can not be read, is of a newer version or is
+	 *             cut short
+	 */
+	public static int[][] read(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER) {
+				throw new IOException("No board header in " + path);
+			}
+
+			ByteBuffer buffer;
+			if (size >= MAP_THRESHOLD) {
+				buffer = channel.map(MapMode.READ_ONLY, 0, size);
+			} else {
+				buffer = ByteBuffer.allocate((int) size);
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				}
+				buffer.flip();
+			}
+
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (buffer.get() != MAGIC[i]) {
+					throw new IOException("No binary board in " + path);
+				}
+			}
+			int version = buffer.get();
+			if (version < 1 || version > VERSION) {
+				throw new IOException("Unsupported version " + version
+						+ " in " + path);
+			}
+			int length = buffer.getInt();
+			if (length < 0 || size != HEADER + (long) length * length) {
+				throw new IOException("Expected " + length + "x" + length
+						+ " cells in " + path);
+			}
+
+			int[][] board = new int[length][length];
+			byte[] row = new byte[length];
+			for (int r = 0; r < length; r++) {
+				buffer.get(row);
+				for (int c = 0; c < length; c++) {
+					board[r][c] = (row[c] & 0xFF) - 1;
+				}
+			}
+			return board;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package utilities;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a file does not contain a valid TEN! board, with the position
+ * of the problem
+ */
+@SuppressWarnings("serial")
+public class BoardFormatException extends IOException {
+
+	private final int row;
+	private final int column;
+
+	/**
+	 * Constructor for BoardFormatException
+	 * 
+	 * @param source
+	 *            Name of the file
+	 * @param row
+	 *            Row of the problem counting from 1, 0 for the whole file
+	 * @param column
+	 *            Column of the problem counting from 1, 0 for the whole row
+	 * @param problem
+	 *            What is wrong
+	 */
+	public BoardFormatException(String source, int row, int column,
+			String problem) {
+		super(message(source, row, column, problem));
+		this.row = row;
+		this.column = column;
+	}
+
+	/**
+	 * @return Row of the problem counting from 1, 0 for the whole file
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * @return Column of the problem counting from 1, 0 for the whole row
+	 */
+	public int getColumn() {
+		return column;
+	}
+
+	private static String message(String source, int row, int column,
+			String problem) {
+		String position = "";
+		if (row > 0) {
+			position += "row: " + row + " ";
+		}
+		if (column > 0) {
+			position += "cell: " + column + " ";
+		}
+		if (!position.isEmpty()) {
+			position = "on " + position;
+		}
+		return "Error " + position + "in " + source + ": " + problem;
+	}
+}
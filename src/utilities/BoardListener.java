@@ -0,0 +1,16 @@
+package utilities;
+
+/**
+ * Listener for changes of the cells on a TEN! board
+ */
+public interface BoardListener {
+
+	/**
+	 * Called after cells of the board changed
+	 * 
+	 * @param changes
+	 *            Changed cells. The change set is reused by the board, copy
+	 *            anything needed after returning
+	 */
+	void boardChanged(ChangeSet changes);
+}
@@ -0,0 +1,190 @@
+package utilities;
+
+import java.util.Arrays;
+
+/**
+ * Changes of cells on a TEN! board, in the order they happened. Every change
+ * has the index of the cell (row * length + column), its old and new value
+ * and the kind of change. Changes made by a move also know its direction.
+ * 
+ * Changes are kept in parallel primitive arrays that only grow, so a change
+ * set can be cleared and filled again without allocating.
+ */
+public class ChangeSet {
+
+	/**
+	 * Kinds of changes
+	 */
+	public enum Kind {
+		// Cell holds the result of a merge
+		MERGE,
+		// Value moved onto or away from the cell
+		SLIDE,
+		// Zero placed on an empty cell
+		SPAWN,
+		// Cell overwritten by loading or resetting the board
+		SET
+	}
+
+	private static final Kind[] KINDS = Kind.values();
+
+	private int length;
+	private int size;
+
+	// Null unless the changes were made by a move
+	private Direction direction;
+
+	private int[] cells;
+	private int[] oldValues;
+	private int[] newValues;
+	private byte[] kinds;
+
+	/**
+	 * Constructor for ChangeSet: empty, for a board of unknown size
+	 */
+	public ChangeSet() {
+		cells = new int[16];
+		oldValues = new int[16];
+		newValues = new int[16];
+		kinds = new byte[16];
+	}
+
+	/**
+	 * Remove all changes
+	 * 
+	 * @param length
+	 *            Length of one side of the board the next changes belong to
+	 */
+	public void clear(int length) {
+		this.length = length;
+		size = 0;
+		direction = null;
+	}
+
+	/**
+	 * @param direction
+	 *            Direction of the move making the next changes
+	 */
+	public void setDirection(Direction direction) {
+		this.direction = direction;
+	}
+
+	/**
+	 * @return Direction of the move that made the changes, null when the
+	 *         board was set, reset or restored
+	 */
+	public Direction getDirection() {
+		return direction;
+	}
+
+	/**
+	 * Add a change of a single cell
+	 * 
+	 * @param cell
+	 *            Index of the cell, row * length + column
+	 * @param oldValue
+	 *            Value before the change
+	 * @param newValue
+	 *            Value after the change
+	 * @param kind
+	 *            Kind of change
+	 */
+	public void add(int cell, int oldValue, int newValue, Kind kind) {
+		if (size == cells.length) {
+			grow(size + 1);
+		}
+		cells[size] = cell;
+		oldValues[size] = oldValue;
+		newValues[size] = newValue;
+		kinds[size] = (byte) kind.ordinal();
+		size++;
+	}
+
+	/**
+	 * Add all changes of another change set for a board of the same size
+	 * 
+	 * @param other
+	 *            Changes to add after the changes in this set
+	 */
+	public void addAll(ChangeSet other) {
+		if (size + other.size > cells.length) {
+			grow(size + other.size);
+		}
+		System.arraycopy(other.cells, 0, cells, size, other.size);
+		System.arraycopy(other.oldValues, 0, oldValues, size, other.size);
+		System.arraycopy(other.newValues, 0, newValues, size, other.size);
+		System.arraycopy(other.kinds, 0, kinds, size, other.size);
+		size += other.size;
+	}
+
+	/**
+	 * @return Length of one side of the board
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return Amount of changes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return Whether there are no changes
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return Index of the cell of change i, row * length + column
+	 */
+	public int getCell(int i) {
+		return cells[i];
+	}
+
+	/**
+	 * @return Row of the cell of change i
+	 */
+	public int getRow(int i) {
+		return cells[i] / length;
+	}
+
+	/**
+	 * @return Column of the cell of change i
+	 */
+	public int getColumn(int i) {
+		return cells[i] % length;
+	}
+
+	/**
+	 * @return Value of the cell before change i
+	 */
+	public int getOldValue(int i) {
+		return oldValues[i];
+	}
+
+	/**
+	 * @return Value of the cell after change i
+	 */
+	public int getNewValue(int i) {
+		return newValues[i];
+	}
+
+	/**
+	 * @return Kind of change i
+	 */
+	public Kind getKind(int i) {
+		return KINDS[kinds[i]];
+	}
+
+	private void grow(int minimum) {
+		int capacity = Math.max(minimum, cells.length * 2);
+		cells = Arrays.copyOf(cells, capacity);
+		oldValues = Arrays.copyOf(oldValues, capacity);
+		newValues = Arrays.copyOf(newValues, capacity);
+		kinds = Arrays.copyOf(kinds, capacity);
+	}
+}
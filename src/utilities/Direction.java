@@ -1,21 +1,9 @@
 package utilities;
 
-import javax.swing.JButton;
-
 /**
- * Common Constants for direction and directional buttons
+ * Common Constants for direction
  */
 public enum Direction {
 	EAST, SOUTH, WEST, NORTH;
 
-	private JButton button;
-
-	public JButton button() {
-		return button;
-	}
-
-	public void button(JButton btn) {
-		button = btn;
-	}
-
 }
@@ -2,22 +2,22 @@ package utilities;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
 
 import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
 
 /**
- * File handling methods for the game TEN!
+ * File handling methods for the game TEN! Boards are stored in TextFormat,
+ * or in BinaryFormat when the file name ends with BinaryFormat.EXTENSION. The
+ * format of a loaded file is detected from its content.
  */
 public abstract class FileHandler {
 
-	// fileChooser as field to remember location
-	private static JFileChooser fileChooser = new JFileChooser();
-	
+	// fileChooser as field to remember location, created on first use so
+	// the other methods work without Swing
+	private static JFileChooser fileChooser;
+
 	/**
 	 * Save TEN! board to file using JFileChooser
 	 * 
@@ -25,23 +25,8 @@ public abstract class FileHandler {
 	 *            Int[][] of TEN! board
 	 */
 	public static void boardStoreAsFile(int[][] board) {
-		// Generate lines to put in file
-		ArrayList<String> fileLines = new ArrayList<String>();
-		for (int r = 0; r < board.length; r++) {
-			String fileLine = "";
-			for (int c = 0; c < board[r].length; c++) {
-				fileLine += Integer.toString(board[r][c]);
-
-				if (c != board[r].length - 1) {
-					// whitespace as value seperator
-					fileLine += " ";
-				}
-			}
-			fileLines.add(fileLine);
-		}
-
 		// Open Save dialog to select a target file
-		int result = fileChooser.showSaveDialog(fileChooser);
+		int result = getFileChooser().showSaveDialog(fileChooser);
 
 		// Continue only when a file target is approved
 		if (result == JFileChooser.APPROVE_OPTION) {
@@ -49,79 +34,115 @@ public abstract class FileHandler {
 			// Get selected file
 			File targetFile = fileChooser.getSelectedFile();
 			try {
-				// Make sure file is empty
-				if (!targetFile.exists()) {
-					targetFile.createNewFile();
+				if (targetFile.getName().endsWith(BinaryFormat.EXTENSION)) {
+					BinaryFormat.write(board, targetFile.toPath());
+				} else {
+					TextFormat.write(board, targetFile.toPath());
 				}
-
-				// Write lines to file
-				Files.write(targetFile.toPath(), fileLines,
-						StandardCharsets.UTF_8);
-
 			} catch (IOException e) {
-				e.printStackTrace();
+				showError("Store failed", e);
 			}
 		}
 	}
 
 	/**
-	 * Load TEN! board from file using JFileChooser
+	 * Load TEN! board of any size from file using JFileChooser
 	 * 
-	 * @return Int[][] for TEN! board
+	 * @return Int[][] for TEN! board, null if nothing was loaded
 	 */
 	public static int[][] boardLoadFromFile() {
+		return boardLoadFromFile(0);
+	}
+
+	/**
+	 * Load TEN! board from file using JFileChooser
+	 * 
+	 * @param length
+	 *            Length of one side the board needs to have, 0 for any
+	 * @return Int[][] for TEN! board, null if nothing was loaded
+	 */
+	public static int[][] boardLoadFromFile(int length) {
 		int[][] board = null;
 
 		// Open Save dialog to select a target file
-		int result = fileChooser.showOpenDialog(fileChooser);
+		int result = getFileChooser().showOpenDialog(fileChooser);
 
 		// Continue only when a file target is approved
 		if (result == JFileChooser.APPROVE_OPTION) {
 			Path path = fileChooser.getSelectedFile().toPath();
 
-			List<String> fileLines = null;
-
 			try {
-				// Read lines from file
-				fileLines = Files.readAllLines(path, StandardCharsets.UTF_8);
-
+				board = boardRead(path, length);
 			} catch (IOException e) {
-				e.printStackTrace();
+				showError("Load failed", e);
 			}
+		}
 
-			// Make sure file has content
-			if (fileLines != null) {
-
-				// Initialise board using derived amount of rows
-				board = new int[fileLines.size()][];
-
-				// for each line in the file
-				for (int row = 0; row < fileLines.size(); row++) {
-					// Split line into cells
-					String[] fileLine = fileLines.get(row).split(" ");
-
-					// Initialise row using derived amount of columns
-					int[] line = new int[fileLine.length];
-
-					// for each cell in the line
-					for (int cell = 0; cell < fileLine.length; cell++) {
-						// Try to convert from string to integer
-						try {
-							line[cell] = Integer.parseInt(fileLine[cell]);
-						} catch (NumberFormatException e) {
-							// Debug and trace info
-							line[cell] = -2;
-							System.out.println("Error on row: " + (row + 1)
-									+ " cell: " + (cell + 1) + " in "
-									+ path.toString());
-							e.printStackTrace();
-						}
-					}
-					board[row] = line;
-				}
-			}
+		return board;
+	}
+
+	/**
+	 * Read TEN! board from file in either format
+	 * 
+	 * @param path
+	 *            File to read
+	 * @param length
+	 *            Length of one side the board needs to have, 0 for any
+	 * @return Int[][] for square TEN! board
+	 * @throws BoardFormatException
+	 *             If the file contains no valid board or one of another size
+	 * @throws IOException
+	 *             If the file can not be read
+	 */
+	public static int[][] boardRead(Path path, int length) throws IOException {
+		int[][] board;
+		if (BinaryFormat.isBinary(path)) {
+			board = BinaryFormat.read(path);
+		} else {
+			board = TextFormat.read(path);
 		}
 
+		if (length > 0 && board.length != length) {
+			throw new BoardFormatException(path.toString(), 0, 0, "board is "
+					+ board.length + "x" + board.length + ", expected "
+					+ length + "x" + length);
+		}
 		return board;
 	}
+
+	/**
+	 * Select a file to store something else than a board using JFileChooser
+	 * 
+	 * @return Path of the selected file, null if none was approved
+	 */
+	public static Path selectStoreFile() {
+		int result = getFileChooser().showSaveDialog(fileChooser);
+		if (result != JFileChooser.APPROVE_OPTION) {
+			return null;
+		}
+		return fileChooser.getSelectedFile().toPath();
+	}
+
+	/**
+	 * Show a failed load or store to the player
+	 * 
+	 * @param title
+	 *            Title of the dialog
+	 * @param e
+	 *            Cause of the failure
+	 */
+	public static void showError(String title, IOException e) {
+		// Format errors explain themselves, others need their type
+		String message = e instanceof BoardFormatException ? e.getMessage()
+				: e.toString();
+		JOptionPane.showMessageDialog(null, message, title,
+				JOptionPane.ERROR_MESSAGE);
+	}
+
+	private static JFileChooser getFileChooser() {
+		if (fileChooser == null) {
+			fileChooser = new JFileChooser();
+		}
+		return fileChooser;
+	}
 }
@@ -0,0 +1,15 @@
+package utilities;
+
+/**
+ * Listener for the score of a TEN! board
+ */
+public interface ScoreListener {
+
+	/**
+	 * Called after the score has been updated
+	 * 
+	 * @param score
+	 *            Score with maximum of 10.0
+	 */
+	void scoreChanged(double score);
+}
@@ -0,0 +1,79 @@
+package utilities;
+
+import java.util.Random;
+
+/**
+ * Random with a state that can be read and restored, so a game can be
+ * replayed exactly from its seed or continued from a saved state. Numbers
+ * come from the SplitMix64 generator: the state is a single long that grows
+ * by a constant per number and is scrambled on the way out.
+ * 
+ * Not thread safe, give every Board its own.
+ */
+@SuppressWarnings("serial")
+public class SeededRandom extends Random {
+
+	// Added to the state for every number
+	private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+	// Set from Random's constructor through setSeed
+	private long state;
+
+	/**
+	 * Constructor for SeededRandom with a seed that differs every time
+	 */
+	public SeededRandom() {
+		this(mix(System.nanoTime() ^ System.identityHashCode(new Object())));
+	}
+
+	/**
+	 * Constructor for SeededRandom
+	 * 
+	 * @param seed
+	 *            Initial state
+	 */
+	public SeededRandom(long seed) {
+		super(seed);
+	}
+
+	/**
+	 * Start over from a seed, the state becomes the seed itself
+	 */
+	@Override
+	public void setSeed(long seed) {
+		super.setSeed(seed);
+		state = seed;
+	}
+
+	/**
+	 * @return Current state, a seed that continues with the same numbers
+	 */
+	public long getState() {
+		return state;
+	}
+
+	/**
+	 * @param state
+	 *            State returned by getState() earlier
+	 */
+	public void setState(long state) {
+		this.state = state;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> 64 - bits);
+	}
+
+	@Override
+	public long nextLong() {
+		state += GAMMA;
+		return mix(state);
+	}
+
+	private static long mix(long z) {
+		z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+		return z ^ z >>> 31;
+	}
+}
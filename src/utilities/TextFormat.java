@@ -0,0 +1,355 @@
+package utilities;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Text file format for TEN! boards: one line per row with the values
+ * separated by spaces, -1 for an empty cell.
+ * 
+ * Files are streamed through a small buffer. The reader parses characters
+ * straight into the board and stops at the first problem with its row and
+ * column, the writer puts digits straight into the buffer. No object is
+ * created per cell or per line.
+ */
+public final class TextFormat {
+
+	// Bytes read or written at once
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// Longest value in text: a minus sign and ten digits
+	private static final int MAX_DIGITS = 11;
+
+	/**
+	 * Longest side of a board that is read, the board is allocated once the
+	 * first row is known
+	 */
+	public static final int MAX_LENGTH = 4096;
+
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator()
+			.getBytes(StandardCharsets.US_ASCII);
+
+	private TextFormat() {
+	}
+
+	/**
+	 * Write a board to a file, replacing its content
+	 * 
+	 * @param board
+	 *            Int[][] of TEN! board
+	 * @param path
+	 *            File to write
+	 * @throws IOException
+	 *             If the file can not be written
+	 */
+	public static void write(int[][] board, Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			write(board, channel);
+		}
+	}
+
+	/**
+	 * Write a board to a channel
+	 * 
+	 * @param board
+	 *            Int[][] of TEN! board
+	 * @param channel
+	 *            Channel to write to, left open
+	 * @throws IOException
+	 *             If the channel can not be written
+	 */
+	public static void write(int[][] board, WritableByteChannel channel)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		byte[] digits = new byte[MAX_DIGITS];
+
+		for (int r = 0; r < board.length; r++) {
+			for (int c = 0; c < board[r].length; c++) {
+				if (buffer.remaining() < MAX_DIGITS + LINE_SEPARATOR.length) {
+					flush(buffer, channel);
+				}
+				if (c > 0) {
+					// whitespace as value seperator
+					buffer.put((byte) ' ');
+				}
+				putValue(buffer, board[r][c], digits);
+			}
+			if (buffer.remaining() < LINE_SEPARATOR.length) {
+				flush(buffer, channel);
+			}
+			buffer.put(LINE_SEPARATOR);
+		}
+		flush(buffer, channel);
+	}
+
+	/**
+	 * Read a board from a file
+	 * 
+	 * @param path
+	 *            File to read
+	 * @return Int[][] for square TEN! board
+	 * @throws BoardFormatException
+	 *             If the file contains no valid board
+	 * @throws IOException
+	 *             If the file can not be read
+	 */
+	public static int[][] read(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			return read(channel, path.toString(), channel.size());
+		}
+	}
+
+	/**
+	 * Read a board from a channel. Values are separated by spaces or tabs,
+	 * rows end with \n or \r\n. Blank lines are only allowed at the end. A
+	 * row may hold at most MAX_LENGTH values
+	 * 
+	 * @param channel
+	 *            Channel to read from, left open
+	 * @param source
+	 *            Name of the channel for error messages
+	 * @return Int[][] for square TEN! board
+	 * @throws BoardFormatException
+	 *             If the channel contains no valid board
+	 * @throws IOException
+	 *             If the channel can not be read
+	 */
+	public static int[][] read(ReadableByteChannel channel, String source)
+			throws IOException {
+		return read(channel, source, -1);
+	}
+
+	/**
+	 * Read a board from a channel of a known size, which limits the length
+	 * of the board further: every value takes at least two characters
+	 * 
+	 * @param size
+	 *            Bytes in the channel, -1 when unknown
+	 */
+	private static int[][] read(ReadableByteChannel channel, String source,
+			long size) throws IOException {
+		Parser parser = new Parser(source, size);
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		while (channel.read(buffer) >= 0) {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				parser.accept(buffer.get());
+			}
+			buffer.clear();
+		}
+		return parser.finish();
+	}
+
+	private static void putValue(ByteBuffer buffer, int value, byte[] digits) {
+		long rest = value;
+		if (rest < 0) {
+			buffer.put((byte) '-');
+			rest = -rest;
+		}
+
+		// Digits come out last first
+		int count = 0;
+		do {
+			digits[count++] = (byte) ('0' + rest % 10);
+			rest /= 10;
+		} while (rest > 0);
+		while (count > 0) {
+			buffer.put(digits[--count]);
+		}
+	}
+
+	private static void flush(ByteBuffer buffer, WritableByteChannel channel)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Reads a board one character at a time. The length of the board is the
+	 * amount of values on the first row, every other row is checked against
+	 * it. The first row is checked against the longest board that can be
+	 * read before the board is allocated
+	 */
+	private static final class Parser {
+
+		private final String source;
+
+		// Bytes in the source, -1 when unknown
+		private final long size;
+
+		// Values of the first row, until the length is known
+		private int[] first = new int[16];
+
+		private int[][] board;
+		private int length = -1;
+
+		// Position of the next value, counting from 0
+		private int row;
+		private int column;
+
+		// Value being read
+		private boolean inValue;
+		private boolean negative;
+		private boolean hasDigits;
+		private long value;
+
+		// First blank line, after it only blank lines may follow
+		private int blankRow = -1;
+
+		Parser(String source, long size) {
+			this.source = source;
+			this.size = size;
+		}
+
+		void accept(byte b) throws BoardFormatException {
+			if (b >= '0' && b <= '9') {
+				startValue();
+				value = value * 10 + b - '0';
+				hasDigits = true;
+				if (value > (long) Integer.MAX_VALUE + 1) {
+					throw error(column + 1, "number is too big");
+				}
+			} else if (b == '-') {
+				if (inValue) {
+					throw error(column + 1, "'-' inside a number");
+				}
+				startValue();
+				negative = true;
+			} else if (b == ' ' || b == '\t' || b == '\r') {
+				endValue();
+			} else if (b == '\n') {
+				endValue();
+				endRow();
+			} else {
+				throw error(column + 1, "'" + (char) (b & 0xFF)
+						+ "' is not part of a number");
+			}
+		}
+
+		int[][] finish() throws BoardFormatException {
+			endValue();
+			endRow();
+			if (board == null) {
+				throw new BoardFormatException(source, 0, 0, "no board found");
+			}
+			if (row != length) {
+				throw new BoardFormatException(source, 0, 0, "expected "
+						+ length + " rows for a " + length + "x" + length
+						+ " board, found " + row);
+			}
+			return board;
+		}
+
+		private void startValue() throws BoardFormatException {
+			if (inValue) {
+				return;
+			}
+			if (blankRow >= 0) {
+				throw new BoardFormatException(source, blankRow + 1, 0,
+						"empty row");
+			}
+			if (length >= 0 && row >= length) {
+				throw error(0, "more than " + length + " rows for a "
+						+ length + "x" + length + " board");
+			}
+			inValue = true;
+			negative = false;
+			hasDigits = false;
+			value = 0;
+		}
+
+		private void endValue() throws BoardFormatException {
+			if (!inValue) {
+				return;
+			}
+			inValue = false;
+			if (!hasDigits) {
+				throw error(column + 1, "'-' without a number");
+			}
+
+			long number = negative ? -value : value;
+			if (number > Integer.MAX_VALUE) {
+				throw error(column + 1, "number is too big");
+			}
+			if (number < -1) {
+				throw error(column + 1, "values below -1 are not allowed");
+			}
+
+			if (length < 0) {
+				checkLength(column + 1);
+				if (column == first.length) {
+					int[] grown = new int[first.length * 2];
+					System.arraycopy(first, 0, grown, 0, first.length);
+					first = grown;
+				}
+				first[column] = (int) number;
+			} else {
+				if (column >= length) {
+					throw error(column + 1, "more than " + length
+							+ " values on a row");
+				}
+				board[row][column] = (int) number;
+			}
+			column++;
+		}
+
+		private void endRow() throws BoardFormatException {
+			if (column == 0) {
+				// Blank line, fine as long as nothing follows
+				if (blankRow < 0 && (length < 0 || row < length)) {
+					blankRow = row;
+				}
+				return;
+			}
+
+			if (length < 0) {
+				length = column;
+				board = new int[length][length];
+				System.arraycopy(first, 0, board[0], 0, length);
+				first = null;
+			} else if (column != length) {
+				throw error(0, "expected " + length + " values, found "
+						+ column);
+			}
+			row++;
+			column = 0;
+		}
+
+		/**
+		 * Check the values on the first row so far against the longest board
+		 * that can be read
+		 * 
+		 * @param values
+		 *            Values on the first row so far
+		 */
+		private void checkLength(int values) throws BoardFormatException {
+			if (values > MAX_LENGTH) {
+				throw error(values, "more than " + MAX_LENGTH
+						+ " values on a row");
+			}
+
+			// Every value but the last takes a digit and a separator
+			if (size >= 0 && 2L * values * values - 1 > size) {
+				throw error(values, values + " values on the first row do "
+						+ "not fit a square board in " + size + " bytes");
+			}
+		}
+
+		private BoardFormatException error(int errorColumn, String problem) {
+			return new BoardFormatException(source, row + 1, errorColumn,
+					problem);
+		}
+	}
+}
@@ -0,0 +1,461 @@
+package views;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.Arrays;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import metrics.Metrics;
+import metrics.Metrics.Stage;
+import utilities.BoardListener;
+import utilities.ChangeSet;
+import utilities.ChangeSet.Kind;
+import utilities.Direction;
+
+/**
+ * View class: AnimatedBoard, draws a TEN! board with Java2D and animates
+ * every move: tiles slide to where they end up, merged tiles pop and new
+ * zeroes grow.
+ * 
+ * Changes are turned into an Animation right away on the thread that made
+ * them, using the values this board saw before. An Animation is complete
+ * before it is published and is not changed afterwards. Where every tile
+ * goes is worked out line by line: the tiles of a line keep their order, a
+ * merged tile takes the two tiles before it (three when two merges made it)
+ * and every other tile takes one.
+ * 
+ * Drawing is apart from that: while an animation runs a timer repaints at
+ * FRAME_MILLIS, and every frame is drawn into a VolatileImage (a
+ * BufferedImage without a screen) from the latest animation and the clock.
+ * A change during an animation replaces it, so quick moves skip frames
+ * instead of queueing them, and slow frames show fewer steps of an
+ * animation that still takes the same time.
+ */
+@SuppressWarnings("serial")
+public class AnimatedBoard extends JComponent implements BoardListener {
+
+	/**
+	 * Milliseconds between two frames, 60 frames per second
+	 */
+	public static final int FRAME_MILLIS = 16;
+
+	// Milliseconds tiles slide, and merged and new tiles pop afterwards
+	private static final int SLIDE_MILLIS = 90;
+	private static final int POP_MILLIS = 90;
+
+	// Part of a cell a merged tile grows while popping
+	private static final double POP_GROWTH = 0.2;
+
+	private static final Color TILE_COLOR = new Color(238, 238, 228);
+
+	private final int length;
+
+	// Values as last seen by boardChanged, with scratch space per cell
+	private final Object lock = new Object();
+	private final int[] values;
+	private final int[] previous;
+	private final int[] lineCells;
+	private final int[] tileCells;
+
+	private volatile Animation animation;
+	private final Timer timer;
+
+	// Image of every value at the current cell size, -1 is at index 0
+	private Image[] glyphs = new Image[12];
+	private int glyphSize;
+
+	private VolatileImage volatileBuffer;
+	private BufferedImage buffer;
+
+	/**
+	 * Constructor for AnimatedBoard, all cells empty
+	 * 
+	 * @param boardLength
+	 *            Length of one side of the board
+	 */
+	public AnimatedBoard(int boardLength) {
+		length = boardLength;
+		values = new int[length * length];
+		Arrays.fill(values, -1);
+		previous = new int[values.length];
+		lineCells = new int[length];
+		tileCells = new int[length];
+		animation = new Animation(values.clone(), 0, 0);
+
+		setOpaque(true);
+		setBackground(Color.WHITE);
+		setForeground(Color.BLACK);
+
+		timer = new Timer(FRAME_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (animation.isDone(System.nanoTime())) {
+					timer.stop();
+				}
+				repaint();
+			}
+		});
+		timer.setCoalesce(true);
+	}
+
+	@Override
+	public void boardChanged(ChangeSet changes) {
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		Animation next;
+		synchronized (lock) {
+			next = animate(changes);
+		}
+		// Complete before it is published, frames never see it change
+		animation = next;
+
+		final long queued = Metrics.ENABLED ? Metrics.record(Stage.VIEW,
+				start) : 0;
+		if (SwingUtilities.isEventDispatchThread()) {
+			timer.start();
+		} else {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					if (Metrics.ENABLED) {
+						Metrics.record(Stage.QUEUE, queued);
+					}
+					timer.start();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Apply changes to the values and work out how to animate them
+	 * 
+	 * @param changes
+	 *            Changed cells of a TEN! board
+	 * @return Animation from the values before the changes to after them
+	 */
+	Animation animate(ChangeSet changes) {
+		System.arraycopy(values, 0, previous, 0, values.length);
+		for (int i = 0; i < changes.size(); i++) {
+			values[changes.getCell(i)] = changes.getNewValue(i);
+		}
+
+		Direction direction = changes.getDirection();
+		Animation next = new Animation(values.clone(),
+				direction != null ? SLIDE_MILLIS : 0, POP_MILLIS);
+		for (int i = 0; i < changes.size(); i++) {
+			int cell = changes.getCell(i);
+			if (changes.getKind(i) == Kind.MERGE) {
+				next.merged[cell] = true;
+			} else if (changes.getKind(i) == Kind.SPAWN) {
+				next.spawned[cell] = true;
+			}
+		}
+
+		if (direction != null) {
+			boolean[] lines = new boolean[length];
+			for (int i = 0; i < changes.size(); i++) {
+				lines[line(direction, changes.getCell(i))] = true;
+			}
+			for (int line = 0; line < length; line++) {
+				if (lines[line] && !slide(next, direction, line)) {
+					// Not a move TEN! would make, show it without sliding
+					return new Animation(values.clone(), 0, POP_MILLIS);
+				}
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Add a sprite for every tile of a moved line
+	 * 
+	 * @return False if the tiles before and after don't fit together
+	 */
+	private boolean slide(Animation next, Direction direction, int line) {
+		// Tiles before and after, starting at the end of the line
+		int tiles = 0;
+		int results = 0;
+		for (int distance = 0; distance < length; distance++) {
+			int cell = cell(direction, line, distance);
+			next.moving[cell] = true;
+			if (previous[cell] != -1) {
+				lineCells[tiles++] = cell;
+			}
+			if (values[cell] != -1 && !next.spawned[cell]) {
+				tileCells[results++] = cell;
+			}
+		}
+
+		int tile = 0;
+		for (int result = 0; result < results; result++) {
+			int cell = tileCells[result];
+			int taken = 1;
+			if (next.merged[cell]) {
+				int before = values[cell] - 1;
+				taken = tile + 1 < tiles && previous[lineCells[tile]] == before
+						&& previous[lineCells[tile + 1]] == before ? 2 : 3;
+			}
+			if (tile + taken > tiles) {
+				return false;
+			}
+			for (int i = 0; i < taken; i++, tile++) {
+				next.addSprite(lineCells[tile], cell,
+						previous[lineCells[tile]]);
+			}
+		}
+		return tile == tiles;
+	}
+
+	/**
+	 * Number of the line a cell is on, rows for east and west, columns for
+	 * south and north
+	 */
+	private int line(Direction direction, int cell) {
+		return direction == Direction.EAST || direction == Direction.WEST ? cell
+				/ length : cell % length;
+	}
+
+	/**
+	 * Index of a cell of a line, counted from the end the tiles move to
+	 */
+	private int cell(Direction direction, int line, int distance) {
+		switch (direction) {
+		case EAST:
+			return line * length + length - 1 - distance;
+		case WEST:
+			return line * length + distance;
+		case SOUTH:
+			return (length - 1 - distance) * length + line;
+		case NORTH:
+			return distance * length + line;
+		default:
+			throw new IllegalArgumentException(direction.toString());
+		}
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		int width = getWidth();
+		int height = getHeight();
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+
+		Animation current = animation;
+		long now = System.nanoTime();
+		do {
+			Image frame = frameBuffer(width, height);
+			Graphics2D frameGraphics = (Graphics2D) frame.getGraphics();
+			drawFrame(frameGraphics, current, now, width, height);
+			frameGraphics.dispose();
+			g.drawImage(frame, 0, 0, null);
+		} while (volatileBuffer != null && volatileBuffer.contentsLost());
+
+		if (Metrics.ENABLED) {
+			Metrics.record(Stage.FRAME, start);
+		}
+	}
+
+	/**
+	 * Image to draw a frame into, made again when lost or resized
+	 */
+	private Image frameBuffer(int width, int height) {
+		GraphicsConfiguration configuration = getGraphicsConfiguration();
+		if (configuration == null) {
+			if (buffer == null || buffer.getWidth() != width
+					|| buffer.getHeight() != height) {
+				buffer = new BufferedImage(width, height,
+						BufferedImage.TYPE_INT_RGB);
+			}
+			return buffer;
+		}
+
+		if (volatileBuffer == null || volatileBuffer.getWidth() != width
+				|| volatileBuffer.getHeight() != height
+				|| volatileBuffer.validate(configuration)
+					== VolatileImage.IMAGE_INCOMPATIBLE) {
+			volatileBuffer = createVolatileImage(width, height);
+		}
+		return volatileBuffer;
+	}
+
+	/**
+	 * Draw the state of an animation at a moment
+	 * 
+	 * @param g
+	 *            Graphics of the frame
+	 * @param animation
+	 *            Animation to draw
+	 * @param now
+	 *            System.nanoTime() of the frame
+	 */
+	void drawFrame(Graphics2D g, Animation animation, long now, int width,
+			int height) {
+		int cellSize = Math.max(1, Math.min(width, height) / length);
+		if (cellSize != glyphSize) {
+			Arrays.fill(glyphs, null);
+			glyphSize = cellSize;
+		}
+
+		g.setColor(getBackground());
+		g.fillRect(0, 0, width, height);
+
+		double elapsed = (now - animation.start) / 1e6;
+		boolean sliding = elapsed < animation.slideMillis;
+		boolean popping = !sliding && !animation.isDone(now);
+
+		// Tiles standing still
+		for (int cell = 0; cell < animation.values.length; cell++) {
+			int value = animation.values[cell];
+			if (sliding && animation.moving[cell] || (sliding || popping)
+					&& (animation.merged[cell] || animation.spawned[cell])) {
+				value = -1;
+			}
+			g.drawImage(glyph(value), cell % length * cellSize, cell / length
+					* cellSize, null);
+		}
+
+		if (sliding) {
+			double t = elapsed / animation.slideMillis;
+			double eased = 1 - (1 - t) * (1 - t);
+			for (int i = 0; i < animation.sprites; i++) {
+				int from = animation.spriteFrom[i];
+				int to = animation.spriteTo[i];
+				double column = from % length + (to % length - from % length)
+						* eased;
+				double row = from / length + (to / length - from / length)
+						* eased;
+				g.drawImage(glyph(animation.spriteValue[i]),
+						(int) Math.round(column * cellSize),
+						(int) Math.round(row * cellSize), null);
+			}
+		} else if (popping) {
+			double t = (elapsed - animation.slideMillis) / animation.popMillis;
+			for (int cell = 0; cell < animation.values.length; cell++) {
+				double scale;
+				if (animation.spawned[cell]) {
+					scale = t;
+				} else if (animation.merged[cell]) {
+					scale = 1 + POP_GROWTH * Math.sin(Math.PI * t);
+				} else {
+					continue;
+				}
+				int size = (int) Math.round(cellSize * scale);
+				int offset = (cellSize - size) / 2;
+				g.drawImage(glyph(animation.values[cell]), cell % length
+						* cellSize + offset, cell / length * cellSize + offset,
+						size, size, null);
+			}
+		}
+	}
+
+	/**
+	 * Image of a tile at the current cell size, drawn the first time it is
+	 * needed
+	 * 
+	 * @param value
+	 *            Value of the tile, -1 for an empty cell
+	 */
+	private Image glyph(int value) {
+		if (value + 1 >= glyphs.length) {
+			glyphs = Arrays.copyOf(glyphs, value + 2);
+		}
+		if (glyphs[value + 1] != null) {
+			return glyphs[value + 1];
+		}
+
+		int cellSize = glyphSize;
+		BufferedImage glyph = new BufferedImage(cellSize, cellSize,
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = glyph.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+				RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+		g.setColor(value == -1 ? getBackground() : TILE_COLOR);
+		g.fillRect(0, 0, cellSize, cellSize);
+		g.setColor(getForeground());
+		g.drawRect(0, 0, cellSize - 1, cellSize - 1);
+
+		if (value != -1) {
+			// Same font as a JLabel tile, scaled with the cell
+			g.setFont(new Font("sans-serif", Font.BOLD, Math.max(1,
+					cellSize * 36 / BoardCanvas.CELL_SIZE)));
+			String text = Integer.toString(value);
+			FontMetrics metrics = g.getFontMetrics();
+			g.drawString(text, (cellSize - metrics.stringWidth(text)) / 2,
+					(cellSize - metrics.getHeight()) / 2 + metrics.getAscent());
+		}
+		g.dispose();
+
+		glyphs[value + 1] = glyph;
+		return glyph;
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		return new Dimension(length * BoardCanvas.CELL_SIZE, length
+				* BoardCanvas.CELL_SIZE);
+	}
+
+	/**
+	 * Going from the values before a change to the values after it. Filled
+	 * in by animate() before boardChanged publishes it through the volatile
+	 * animation field, so frames only ever read a complete one
+	 */
+	static final class Animation {
+
+		final long start = System.nanoTime();
+		final int slideMillis;
+		final int popMillis;
+
+		// Values after the change, and per cell whether it is on a moved
+		// line, holds a merge or a new zero
+		final int[] values;
+		final boolean[] moving;
+		final boolean[] merged;
+		final boolean[] spawned;
+
+		// Tiles sliding from one cell to another with their old value
+		final int[] spriteFrom;
+		final int[] spriteTo;
+		final int[] spriteValue;
+		int sprites;
+
+		Animation(int[] values, int slideMillis, int popMillis) {
+			this.values = values;
+			this.slideMillis = slideMillis;
+			this.popMillis = popMillis;
+			moving = new boolean[values.length];
+			merged = new boolean[values.length];
+			spawned = new boolean[values.length];
+			spriteFrom = new int[values.length];
+			spriteTo = new int[values.length];
+			spriteValue = new int[values.length];
+		}
+
+		void addSprite(int from, int to, int value) {
+			spriteFrom[sprites] = from;
+			spriteTo[sprites] = to;
+			spriteValue[sprites] = value;
+			sprites++;
+		}
+
+		boolean isDone(long now) {
+			return (now - start) / 1e6 >= slideMillis + popMillis;
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package views;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import javax.swing.JComponent;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+import utilities.ChangeSet;
+
+/**
+ * View class: BoardCanvas, draws a whole TEN! board on a single component,
+ * meant for boards too big for a JLabel per cell. Place it in a JScrollPane:
+ * only the cells inside the visible part are painted, and a change only
+ * repaints the cells it touched.
+ * 
+ * Numbers are drawn once per value into an image and copied from there, the
+ * images are made again when the cells change size. Hold Ctrl and turn the
+ * mouse wheel to zoom.
+ */
+@SuppressWarnings("serial")
+public class BoardCanvas extends JComponent implements Scrollable {
+
+	/**
+	 * Size of a cell in pixels when not zoomed, the size of a JLabel tile
+	 */
+	public static final int CELL_SIZE = 100;
+
+	/**
+	 * Smallest size of a cell in pixels
+	 */
+	public static final int MIN_CELL_SIZE = 4;
+
+	// Largest part of the screen the viewport asks for
+	private static final int MAX_VIEWPORT = 800;
+
+	// Cells this small show no numbers, they can't be read anyway
+	private static final int MIN_TEXT_SIZE = 10;
+
+	// Changes touching more cells than this repaint everything visible
+	private static final int MAX_DIRTY_CELLS = 4096;
+
+	private final int length;
+	private final int[] values;
+
+	private int cellSize;
+
+	// Image of every value at the current cell size, made when first drawn
+	private BufferedImage[] glyphs = new BufferedImage[11];
+
+	/**
+	 * Constructor for BoardCanvas, all cells empty
+	 * 
+	 * @param boardLength
+	 *            Length of one side of the board
+	 * @param cellSize
+	 *            Size of a cell in pixels
+	 */
+	public BoardCanvas(int boardLength, int cellSize) {
+		length = boardLength;
+		values = new int[length * length];
+		Arrays.fill(values, -1);
+		this.cellSize = Math.max(MIN_CELL_SIZE, cellSize);
+
+		setOpaque(true);
+		setBackground(Color.WHITE);
+		setForeground(Color.BLACK);
+
+		// Ctrl + mouse wheel zooms, without Ctrl the scroll pane scrolls
+		addMouseWheelListener(new MouseWheelListener() {
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				if (e.isControlDown()) {
+					int step = Math.max(1, getCellSize() / 8);
+					setCellSize(getCellSize() - e.getWheelRotation() * step);
+				} else if (getParent() != null) {
+					getParent().dispatchEvent(
+							SwingUtilities.convertMouseEvent(BoardCanvas.this, e,
+									getParent()));
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return Size of a cell in pixels
+	 */
+	public int getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Zoom in or out
+	 * 
+	 * @param cellSize
+	 *            Size of a cell in pixels, at least MIN_CELL_SIZE and at most
+	 *            CELL_SIZE
+	 */
+	public void setCellSize(int cellSize) {
+		cellSize = Math.min(CELL_SIZE, Math.max(MIN_CELL_SIZE, cellSize));
+		if (cellSize == this.cellSize) {
+			return;
+		}
+		this.cellSize = cellSize;
+		Arrays.fill(glyphs, null);
+
+		revalidate();
+		repaint();
+	}
+
+	/**
+	 * Show all values of a board
+	 * 
+	 * @param board
+	 *            Int[][] of values on TEN! board
+	 */
+	public void set(int[][] board) {
+		for (int row = 0; row < length; row++) {
+			System.arraycopy(board[row], 0, values, row * length, length);
+		}
+		repaint();
+	}
+
+	/**
+	 * Show the new values of changed cells, repainting only those cells
+	 * 
+	 * @param changes
+	 *            Changed cells of a TEN! board
+	 */
+	public void apply(ChangeSet changes) {
+		for (int i = 0; i < changes.size(); i++) {
+			values[changes.getCell(i)] = changes.getNewValue(i);
+		}
+
+		if (changes.size() > MAX_DIRTY_CELLS) {
+			repaint();
+			return;
+		}
+
+		// The repaint manager merges the areas into one repaint
+		for (int i = 0; i < changes.size(); i++) {
+			repaint(changes.getColumn(i) * cellSize, changes.getRow(i)
+					* cellSize, cellSize, cellSize);
+		}
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(getWidth(), getHeight());
+		}
+
+		g.setColor(getBackground());
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+		// Only cells inside the clip are painted
+		int firstColumn = Math.max(0, clip.x / cellSize);
+		int firstRow = Math.max(0, clip.y / cellSize);
+		int lastColumn = Math.min(length - 1, (clip.x + clip.width - 1)
+				/ cellSize);
+		int lastRow = Math.min(length - 1, (clip.y + clip.height - 1)
+				/ cellSize);
+
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int value = values[row * length + column];
+				if (value >= 0) {
+					BufferedImage glyph = glyph(value);
+					if (glyph != null) {
+						g.drawImage(glyph, column * cellSize, row * cellSize,
+								null);
+					}
+				}
+			}
+		}
+
+		// Grid lines around every painted cell
+		g.setColor(getForeground());
+		int left = firstColumn * cellSize;
+		int top = firstRow * cellSize;
+		int right = (lastColumn + 1) * cellSize;
+		int bottom = (lastRow + 1) * cellSize;
+		for (int row = firstRow; row <= lastRow + 1; row++) {
+			int y = Math.min(row * cellSize, length * cellSize - 1);
+			g.drawLine(left, y, right, y);
+		}
+		for (int column = firstColumn; column <= lastColumn + 1; column++) {
+			int x = Math.min(column * cellSize, length * cellSize - 1);
+			g.drawLine(x, top, x, bottom);
+		}
+	}
+
+	/**
+	 * Image of a value at the current cell size, drawn the first time it is
+	 * needed
+	 * 
+	 * @return Image or null if the cells are too small for numbers
+	 */
+	private BufferedImage glyph(int value) {
+		if (cellSize < MIN_TEXT_SIZE) {
+			return null;
+		}
+		if (value >= glyphs.length) {
+			glyphs = Arrays.copyOf(glyphs, value + 1);
+		}
+		if (glyphs[value] != null) {
+			return glyphs[value];
+		}
+
+		BufferedImage glyph = new BufferedImage(cellSize, cellSize,
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = glyph.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+				RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+		// Same font as a JLabel tile, scaled with the cell
+		g.setFont(new Font("sans-serif", Font.BOLD, Math.max(1,
+				cellSize * 36 / CELL_SIZE)));
+		g.setColor(getForeground());
+
+		String text = Integer.toString(value);
+		FontMetrics metrics = g.getFontMetrics();
+		g.drawString(text, (cellSize - metrics.stringWidth(text)) / 2,
+				(cellSize - metrics.getHeight()) / 2 + metrics.getAscent());
+		g.dispose();
+
+		glyphs[value] = glyph;
+		return glyph;
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		return new Dimension(length * cellSize, length * cellSize);
+	}
+
+	@Override
+	public Dimension getPreferredScrollableViewportSize() {
+		int size = Math.min(MAX_VIEWPORT, length * cellSize);
+		return new Dimension(size, size);
+	}
+
+	@Override
+	public int getScrollableUnitIncrement(Rectangle visibleRect,
+			int orientation, int direction) {
+		return cellSize;
+	}
+
+	@Override
+	public int getScrollableBlockIncrement(Rectangle visibleRect,
+			int orientation, int direction) {
+		int extent = orientation == SwingConstants.HORIZONTAL ? visibleRect.width
+				: visibleRect.height;
+		return Math.max(cellSize, extent / cellSize * cellSize);
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportWidth() {
+		return false;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportHeight() {
+		return false;
+	}
+}
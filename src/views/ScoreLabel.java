@@ -1,17 +1,17 @@
 package views;
 
 import java.text.DecimalFormat;
-import java.util.Observable;
-import java.util.Observer;
 
 import javax.swing.JLabel;
 import javax.swing.SwingConstants;
 
+import utilities.ScoreListener;
+
 /**
  * View class: ScoreLabel, displays latest score
  */
 @SuppressWarnings("serial")
-public class ScoreLabel extends JLabel implements Observer {
+public class ScoreLabel extends JLabel implements ScoreListener {
 
 	private DecimalFormat scoreFormat = new DecimalFormat("#0.0");
 
@@ -28,8 +28,7 @@ public class ScoreLabel extends JLabel implements Observer {
 	}
 
 	@Override
-	public void update(Observable arg0, Object arg1) {
-		double score = (double) arg1;
+	public void scoreChanged(double score) {
 		this.setText(scoreFormat.format(score));
 	}
 
@@ -2,53 +2,95 @@ package views;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
-import java.awt.Dimension;
 import java.awt.FlowLayout;
-import java.awt.Font;
-import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.EnumMap;
+import java.util.Map;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JFrame;
-import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
 import javax.swing.KeyStroke;
-import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 
+import metrics.Metrics;
+import metrics.Metrics.Stage;
+import utilities.BoardListener;
+import utilities.ChangeSet;
 import utilities.Direction;
+import utilities.ScoreListener;
 
 /**
  * View class: The Graphical User Interface. Doesn't know about the controller
  * or the model.
  * 
+ * Boards up to MAX_TILED_LENGTH long are drawn on an AnimatedBoard, which
+ * gets every change right away and animates it at its own pace. Longer
+ * boards are drawn on a BoardCanvas in a scroll pane, their changed cells
+ * are collected and shown in a single update on the event dispatch thread,
+ * so quick moves in a row only refresh the canvas once.
+ * 
+ * With Metrics enabled, the wait of an update in the event queue and the
+ * update itself are timed, by the AnimatedBoard for small boards.
+ * 
  * @author <a href="mailto:mamoru@edwinmiltenburg.nl">Edwin Miltenburg</a>
  * 
  */
-public class View implements Observer {
+public class View implements BoardListener {
+
+	/**
+	 * Longest board shown on an AnimatedBoard
+	 */
+	public static final int MAX_TILED_LENGTH = 16;
+
+	/**
+	 * Size of a cell on a BoardCanvas when the board is opened
+	 */
+	public static final int CANVAS_CELL_SIZE = 40;
 
 	private JFrame frame;
-	private JPanel boardView;
+	private AnimatedBoard boardView;
+	private JScrollPane boardScroll;
+	private BoardCanvas canvas;
 	private JPanel controlPanel;
 	private JPanel controlLeft;
 	private JPanel controlCenter;
 	private JPanel controlRight;
 
-	private JLabel[][] tiles;
+	// Changes not shown yet, and the ones being shown
+	private final Object pendingLock = new Object();
+	private ChangeSet pending = new ChangeSet();
+	private ChangeSet showing = new ChangeSet();
+	private boolean scheduled;
+
+	// System.nanoTime() when the pending changes were scheduled
+	private long scheduledAt;
+
+	private final Runnable showPending = new Runnable() {
+		@Override
+		public void run() {
+			showPending();
+		}
+	};
 
 	// Input components
+	private Map<Direction, JButton> buttons = new EnumMap<Direction, JButton>(
+			Direction.class);
 	private JMenuItem menuItemLoad;
 	private JMenuItem menuItemStore;
+	private JMenuItem menuItemStoreJournal;
+	private JMenuItem menuItemUndo;
+	private JMenuItem menuItemRedo;
 
-	// Observers
+	// Listeners
 	private ScoreLabel scoreLabel;
 
 	/**
@@ -62,26 +104,18 @@ public class View implements Observer {
 		frame.getContentPane().setLayout(new BorderLayout());
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		frame.setLocationRelativeTo(null);
-		frame.setResizable(false);
-
-		// Create BoardView @param int boardLength
-		boardView = new JPanel(new GridLayout(boardLength, boardLength));
-		boardView.setBorder(BorderFactory.createLineBorder(Color.BLACK, 1));
-
-		tiles = new JLabel[boardLength][boardLength];
-		for (int row = 0; row < boardLength; row++) {
-			for (int column = 0; column < boardLength; column++) {
-				JLabel tile = new JLabel();
-
-				tile.setBorder(BorderFactory.createLineBorder(Color.BLACK, 1));
-				tile.setPreferredSize(new Dimension(100, 100));
-				tile.setFont(new Font("sans-serif", Font.BOLD, 36));
-				tile.setHorizontalAlignment(SwingConstants.CENTER);
-				tile.setVerticalAlignment(SwingConstants.CENTER);
-
-				boardView.add(tile);
-				tiles[row][column] = tile;
-			}
+		frame.setResizable(boardLength > MAX_TILED_LENGTH);
+
+		if (boardLength > MAX_TILED_LENGTH) {
+			// Create BoardCanvas, too many cells for a tile each
+			canvas = new BoardCanvas(boardLength, CANVAS_CELL_SIZE);
+			boardScroll = new JScrollPane(canvas);
+			boardScroll.setBorder(BorderFactory.createLineBorder(Color.BLACK,
+					1));
+		} else {
+			// Create BoardView @param int boardLength
+			boardView = new AnimatedBoard(boardLength);
+			boardView.setBorder(BorderFactory.createLineBorder(Color.BLACK, 1));
 		}
 
 		// Create ControlPanel
@@ -104,20 +138,21 @@ public class View implements Observer {
 		scoreLabel = new ScoreLabel();
 
 		for (Direction direction : Direction.values()) {
-			direction.button(new JButton(direction.toString()));
+			buttons.put(direction, new JButton(direction.toString()));
 		}
 
-		controlLeft.add(Direction.WEST.button());
-		controlCenter.add(Direction.NORTH.button(), BorderLayout.NORTH);
+		controlLeft.add(getButton(Direction.WEST));
+		controlCenter.add(getButton(Direction.NORTH), BorderLayout.NORTH);
 		controlCenter.add(scoreLabel, BorderLayout.CENTER);
-		controlCenter.add(Direction.SOUTH.button(), BorderLayout.SOUTH);
-		controlRight.add(Direction.EAST.button());
+		controlCenter.add(getButton(Direction.SOUTH), BorderLayout.SOUTH);
+		controlRight.add(getButton(Direction.EAST));
 
 		controlPanel.add(controlLeft);
 		controlPanel.add(controlCenter);
 		controlPanel.add(controlRight);
 
-		frame.getContentPane().add(boardView, BorderLayout.CENTER);
+		frame.getContentPane().add(canvas != null ? boardScroll : boardView,
+				BorderLayout.CENTER);
 		frame.getContentPane().add(controlPanel, BorderLayout.SOUTH);
 
 		createMenu();
@@ -142,9 +177,33 @@ public class View implements Observer {
 		menuItemStore.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S,
 				ActionEvent.CTRL_MASK));
 
+		menuItemStoreJournal = new JMenuItem("Store Journal...");
+		menuItemStoreJournal.setMnemonic(KeyEvent.VK_J);
+		menuItemStoreJournal.setAccelerator(KeyStroke.getKeyStroke(
+				KeyEvent.VK_J, ActionEvent.CTRL_MASK));
+
+		JMenu menuEdit = new JMenu("Edit");
+		menuEdit.setMnemonic(KeyEvent.VK_E);
+
+		menuItemUndo = new JMenuItem("Undo");
+		menuItemUndo.setMnemonic(KeyEvent.VK_U);
+		menuItemUndo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z,
+				ActionEvent.CTRL_MASK));
+
+		menuItemRedo = new JMenuItem("Redo");
+		menuItemRedo.setMnemonic(KeyEvent.VK_R);
+		menuItemRedo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y,
+				ActionEvent.CTRL_MASK));
+
 		menuBar.add(menuFile);
 		menuFile.add(menuItemLoad);
 		menuFile.add(menuItemStore);
+		menuFile.addSeparator();
+		menuFile.add(menuItemStoreJournal);
+
+		menuBar.add(menuEdit);
+		menuEdit.add(menuItemUndo);
+		menuEdit.add(menuItemRedo);
 
 		frame.setJMenuBar(menuBar);
 	}
@@ -170,14 +229,28 @@ public class View implements Observer {
 	}
 
 	/**
-	 * Inform the player that the game is over and they won, receiving a 10
+	 * Inform the player that the game is over and they won, receiving the
+	 * target
+	 * 
+	 * @param target
+	 *            Value that won the game, 10 in the original rules
 	 */
-	public void displayGameWon() {
+	public void displayGameWon(int target) {
 		JOptionPane.showMessageDialog(null,
-				"You beat the game and receive a 10!", "Congratulations!",
+				"You beat the game and receive a " + target + "!",
+				"Congratulations!",
 				JOptionPane.INFORMATION_MESSAGE);
 	}
 
+	/**
+	 * @param direction
+	 *            Direction the button moves the board in
+	 * @return JButton for the direction
+	 */
+	public JButton getButton(Direction direction) {
+		return buttons.get(direction);
+	}
+
 	/**
 	 * @return JMenuItem Load
 	 */
@@ -192,27 +265,83 @@ public class View implements Observer {
 		return menuItemStore;
 	}
 
+	/**
+	 * @return JMenuItem Store Journal
+	 */
+	public JMenuItem getMenuItemStoreJournal() {
+		return menuItemStoreJournal;
+	}
+
+	/**
+	 * @return JMenuItem Undo
+	 */
+	public JMenuItem getMenuItemUndo() {
+		return menuItemUndo;
+	}
+
+	/**
+	 * @return JMenuItem Redo
+	 */
+	public JMenuItem getMenuItemRedo() {
+		return menuItemRedo;
+	}
+
 	/**
 	 * @return ScoreLabel
 	 */
-	public Object getScoreView() {
+	public ScoreListener getScoreView() {
 		return scoreLabel;
 	}
 
 	@Override
-	public void update(Observable arg0, Object arg1) {
-		int[][] board = (int[][]) arg1;
+	public void boardChanged(ChangeSet changes) {
+		if (boardView != null) {
+			boardView.boardChanged(changes);
+			return;
+		}
 
-		// Update board
-		for (int row = 0; row < board.length; row++) {
-			for (int column = 0; column < board[row].length; column++) {
-				if (board[row][column] == -1) {
-					tiles[row][column].setText("");
-				} else {
-					tiles[row][column].setText(Integer
-							.toString(board[row][column]));
-				}
+		synchronized (pendingLock) {
+			if (pending.isEmpty()) {
+				pending.clear(changes.getLength());
 			}
+			pending.addAll(changes);
+
+			// Already waiting to be shown together with earlier changes
+			if (scheduled) {
+				return;
+			}
+			scheduled = true;
+			if (Metrics.ENABLED) {
+				scheduledAt = System.nanoTime();
+			}
+		}
+		SwingUtilities.invokeLater(showPending);
+	}
+
+	/**
+	 * Show all changes collected since the last time, on the event dispatch
+	 * thread
+	 */
+	private void showPending() {
+		ChangeSet changes;
+		long start;
+		synchronized (pendingLock) {
+			changes = pending;
+			pending = showing;
+			showing = changes;
+			scheduled = false;
+			start = scheduledAt;
+		}
+		if (Metrics.ENABLED) {
+			start = Metrics.record(Stage.QUEUE, start);
+		}
+
+		// Update board
+		canvas.apply(changes);
+		changes.clear(0);
+
+		if (Metrics.ENABLED) {
+			Metrics.record(Stage.VIEW, start);
 		}
 	}
 }
\ No newline at end of file